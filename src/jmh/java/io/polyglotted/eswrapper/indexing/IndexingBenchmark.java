@@ -0,0 +1,96 @@
+package io.polyglotted.eswrapper.indexing;
+
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.polyglotted.eswrapper.indexing.Bundling.bundlingBuilder;
+import static io.polyglotted.eswrapper.indexing.IndexRecord.createRecord;
+import static io.polyglotted.eswrapper.indexing.IndexRecord.updateRecord;
+import static io.polyglotted.eswrapper.indexing.IndexSerializer.GSON;
+import static io.polyglotted.eswrapper.indexing.Indexable.indexableBuilder;
+import static io.polyglotted.eswrapper.services.Trade.syntheticTrade;
+import static io.polyglotted.pgmodel.search.IndexKey.keyWith;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class IndexingBenchmark {
+    private static final long TIMESTAMP = 1425494500000L;
+    private static final String USER = "benchmark";
+
+    @Param({"1", "1000", "100000"})
+    public int records;
+
+    private List<IndexRecord> recordList;
+    private Indexable indexable;
+    private Bundling bundling;
+    private BulkRequest bulkRequest;
+
+    @Setup
+    public void setup() {
+        recordList = new ArrayList<>(records);
+        for (int i = 0; i < records; i++) recordList.add(record(i));
+        indexable = indexableBuilder().records(recordList).timestamp(TIMESTAMP).user(USER).build();
+        bundling = bundlingBuilder().records(recordList).timestamp(TIMESTAMP).user(USER).build();
+        bulkRequest = bundling.writeRequest();
+    }
+
+    @Benchmark
+    public void sourceBytes(Blackhole blackhole) {
+        for (IndexRecord record : recordList) blackhole.consume(RecordAction.sourceBytes(record, TIMESTAMP, USER));
+    }
+
+    @Benchmark
+    public void recordRequests(Blackhole blackhole) {
+        for (IndexRecord record : recordList) blackhole.consume(record.request(TIMESTAMP, USER));
+    }
+
+    @Benchmark
+    public BulkRequest indexableWriteRequest() { return indexable.writeRequest(); }
+
+    @Benchmark
+    public BulkRequest bundlingWriteRequest() { return bundling.writeRequest(); }
+
+    @Benchmark
+    public BytesReference serialiseBulkRequest() throws IOException {
+        BytesStreamOutput output = new BytesStreamOutput();
+        bulkRequest.writeTo(output);
+        return output.bytes();
+    }
+
+    @Benchmark
+    public BytesReference writeAndSerialise() throws IOException {
+        BytesStreamOutput output = new BytesStreamOutput();
+        bundling.writeRequest().writeTo(output);
+        return output.bytes();
+    }
+
+    static IndexRecord record(int i) {
+        String id = String.format("trades:%06d", i);
+        String source = GSON.toJson(syntheticTrade(i));
+        return (i % 2 == 0) ? createRecord("trades", "Trade", id).source(source).build() :
+           updateRecord(keyWith("trades", "Trade", id)).comment("amended").approvalRoles("checker")
+              .source(source).build();
+    }
+}
@@ -0,0 +1,141 @@
+package io.polyglotted.eswrapper.query;
+
+import io.polyglotted.eswrapper.services.Trade;
+import io.polyglotted.pgmodel.search.SimpleDoc;
+import io.polyglotted.pgmodel.search.query.Aggregation;
+import io.polyglotted.pgmodel.search.query.Expression;
+import io.polyglotted.pgmodel.search.query.StandardQuery;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.search.aggregations.AbstractAggregationBuilder;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static io.polyglotted.eswrapper.indexing.IndexSerializer.GSON;
+import static io.polyglotted.eswrapper.query.QueryBuilder.queryToRequest;
+import static io.polyglotted.eswrapper.query.ResponseFixtures.HITS_100;
+import static io.polyglotted.eswrapper.query.ResponseFixtures.HITS_1000;
+import static io.polyglotted.eswrapper.query.ResponseFixtures.NESTED_AGGS;
+import static io.polyglotted.eswrapper.query.ResponseFixtures.NESTED_AGGS_EXPR;
+import static io.polyglotted.eswrapper.query.ResponseFixtures.fixture;
+import static io.polyglotted.eswrapper.query.ResponseFixtures.response;
+import static io.polyglotted.eswrapper.query.ResultBuilder.SimpleObjectBuilder;
+import static io.polyglotted.pgmodel.search.query.Expressions.and;
+import static io.polyglotted.pgmodel.search.query.Expressions.between;
+import static io.polyglotted.pgmodel.search.query.Expressions.equalsTo;
+import static io.polyglotted.pgmodel.search.query.Expressions.in;
+import static io.polyglotted.pgmodel.search.query.Expressions.liveIndex;
+import static io.polyglotted.pgmodel.search.query.Expressions.not;
+import static io.polyglotted.pgmodel.search.query.Expressions.or;
+import static io.polyglotted.pgmodel.search.query.Expressions.prefix;
+import static io.polyglotted.pgmodel.search.query.StandardQuery.queryBuilder;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ReadPathBenchmark {
+    private static final ResultBuilder<Trade> TradeBuilder = SimpleObjectBuilder(GSON, Trade.class);
+
+    @State(Scope.Benchmark)
+    public static class Queries {
+        @Param({"8", "64"})
+        public int size;
+
+        Expression deep;
+        Expression wide;
+        StandardQuery query;
+
+        @Setup
+        public void setup() {
+            deep = equalsTo("trader", "trader-0");
+            for (int i = 1; i < size; i++) {
+                deep = (i % 2 == 0) ? and(deep, not(prefix("city", "L" + i))) :
+                   or(deep, equalsTo("trader", "trader-" + i));
+            }
+            List<Expression> children = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                children.add(i % 3 == 0 ? in("trader", "trader-" + i, "trader-" + (i + 1)) :
+                   (i % 3 == 1 ? between("value", i, i + 10.0) : equalsTo("region", "EMEA")));
+            }
+            wide = and(children.toArray(new Expression[children.size()]));
+            query = queryBuilder().index("trades").type("Trade").expression(and(liveIndex(), wide))
+               .aggregate(NESTED_AGGS_EXPR).size(100).build();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Hits {
+        @Param({HITS_100, HITS_1000})
+        public String fixture;
+
+        byte[] bytes;
+        SearchResponse response;
+
+        @Setup(Level.Trial)
+        public void load() { bytes = fixture(fixture); }
+
+        //search hits memoise their parsed source, so each invocation needs a freshly read response
+        @Setup(Level.Invocation)
+        public void read() { response = response(bytes); }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Aggs {
+        Aggregations aggregations;
+
+        @Setup
+        public void load() { aggregations = response(fixture(NESTED_AGGS)).getAggregations(); }
+    }
+
+    @Benchmark
+    public FilterBuilder buildDeepFilter(Queries queries) { return ExprConverter.buildFilter(queries.deep); }
+
+    @Benchmark
+    public FilterBuilder buildWideFilter(Queries queries) { return ExprConverter.buildFilter(queries.wide); }
+
+    @Benchmark
+    public SearchRequest queryToSearchRequest(Queries queries) { return queryToRequest(queries.query, null); }
+
+    @Benchmark
+    public AbstractAggregationBuilder buildNestedAggregation() { return AggsConverter.build(NESTED_AGGS_EXPR); }
+
+    @Benchmark
+    public Aggregation getNestedAggregation(Aggs aggs) {
+        return AggsConverter.get(NESTED_AGGS_EXPR, aggs.aggregations);
+    }
+
+    @Benchmark
+    public SearchResponse readResponse(Hits hits) { return response(hits.bytes); }
+
+    @Benchmark
+    public List<Map<String, ?>> buildSources(Hits hits) {
+        return ResultBuilder.SourceBuilder.buildFrom(hits.response);
+    }
+
+    @Benchmark
+    public List<SimpleDoc> buildSimpleDocs(Hits hits) {
+        return ResultBuilder.SimpleDocBuilder.buildFrom(hits.response);
+    }
+
+    @Benchmark
+    public List<Trade> buildSimpleObjects(Hits hits) { return TradeBuilder.buildFrom(hits.response); }
+}
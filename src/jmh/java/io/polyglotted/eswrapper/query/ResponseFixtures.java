@@ -0,0 +1,124 @@
+package io.polyglotted.eswrapper.query;
+
+import io.polyglotted.eswrapper.services.AdminWrapper;
+import io.polyglotted.pgmodel.search.index.FieldType;
+import io.polyglotted.pgmodel.search.query.Aggregates;
+import io.polyglotted.pgmodel.search.query.Expression;
+import io.polyglotted.pgmodel.search.query.StandardQuery;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.search.aggregations.bucket.histogram.InternalDateHistogram;
+import org.elasticsearch.search.aggregations.bucket.histogram.InternalHistogram;
+import org.elasticsearch.search.aggregations.bucket.terms.StringTerms;
+import org.elasticsearch.search.aggregations.metrics.stats.InternalStats;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map;
+
+import static io.polyglotted.eswrapper.indexing.IndexSerializer.GSON;
+import static io.polyglotted.eswrapper.indexing.IndexSetting.settingBuilder;
+import static io.polyglotted.eswrapper.indexing.TypeMapping.typeBuilder;
+import static io.polyglotted.eswrapper.query.QueryBuilder.queryToRequest;
+import static io.polyglotted.eswrapper.services.Trade.FieldAddress;
+import static io.polyglotted.eswrapper.services.Trade.syntheticTrade;
+import static io.polyglotted.pgmodel.search.index.FieldMapping.notAnalyzedField;
+import static io.polyglotted.pgmodel.search.index.FieldMapping.notAnalyzedStringField;
+import static io.polyglotted.pgmodel.search.query.Aggregates.dateHistogramBuilder;
+import static io.polyglotted.pgmodel.search.query.Aggregates.statsBuilder;
+import static io.polyglotted.pgmodel.search.query.Aggregates.termBuilder;
+import static io.polyglotted.pgmodel.search.query.StandardQuery.queryBuilder;
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.elasticsearch.node.NodeBuilder.nodeBuilder;
+
+@Slf4j
+public abstract class ResponseFixtures {
+    public static final String HITS_100 = "hits-100";
+    public static final String HITS_1000 = "hits-1000";
+    public static final String NESTED_AGGS = "nested-aggs";
+    public static final Expression NESTED_AGGS_EXPR = nestedAggregation();
+
+    private static final File FIXTURES_DIR = new File("target", "jmh-fixtures");
+    private static final String INDEX = "benchmark_trades";
+    private static final String TYPE = "Trade";
+    private static final int DOCUMENTS = 5000;
+
+    static {
+        StringTerms.registerStreams();
+        InternalHistogram.registerStream();
+        InternalDateHistogram.registerStream();
+        InternalStats.registerStreams();
+    }
+
+    public static byte[] fixture(String name) {
+        File file = new File(FIXTURES_DIR, name + ".bin");
+        if (!file.exists()) capture();
+        return readBytes(file);
+    }
+
+    @SneakyThrows
+    public static SearchResponse response(byte[] bytes) {
+        return SearchResponse.readSearchResponse(new BytesArray(bytes).streamInput());
+    }
+
+    public static void main(String[] args) { capture(); }
+
+    private static Expression nestedAggregation() {
+        Aggregates.Builder terms = termBuilder("traders", "trader");
+        terms.addAndGet(dateHistogramBuilder("dates", "tradeDate", "month")).addAndGet(statsBuilder("value", "value"));
+        return terms.build();
+    }
+
+    @SneakyThrows
+    private static synchronized void capture() {
+        log.info("capturing search response fixtures into " + FIXTURES_DIR);
+        Files.createDirectories(FIXTURES_DIR.toPath());
+        Node node = nodeBuilder().local(true).settings(settingsBuilder()
+           .put("cluster.name", "jmh-fixtures").put("path.data", new File(FIXTURES_DIR, "data").getPath())
+           .put("http.enabled", false).put("discovery.zen.ping.multicast.enabled", false)).node();
+        try {
+            Client client = node.client();
+            AdminWrapper admin = new AdminWrapper(client);
+            admin.dropIndex(INDEX);
+            admin.createIndex(settingBuilder(1, 0).build(), INDEX);
+            admin.createType(typeBuilder().index(INDEX).type(TYPE)
+               .fieldMapping(notAnalyzedStringField("region")).fieldMapping(notAnalyzedStringField("trader"))
+               .fieldMapping(notAnalyzedField("value", FieldType.DOUBLE))
+               .fieldMapping(notAnalyzedField("tradeDate", FieldType.DATE)).build());
+            admin.waitForYellowStatus();
+
+            BulkRequest bulkRequest = new BulkRequest().refresh(true);
+            for (int i = 0; i < DOCUMENTS; i++) {
+                Map<String, Object> trade = syntheticTrade(i);
+                String id = (String) trade.get(FieldAddress);
+                bulkRequest.add(new IndexRequest(INDEX, TYPE, id).source(GSON.toJson(trade)));
+            }
+            client.bulk(bulkRequest).actionGet();
+
+            write(HITS_100, client, queryBuilder().index(INDEX).size(100).build());
+            write(HITS_1000, client, queryBuilder().index(INDEX).size(1000).build());
+            write(NESTED_AGGS, client, queryBuilder().index(INDEX).size(0).aggregate(NESTED_AGGS_EXPR).build());
+            admin.dropIndex(INDEX);
+        } finally {
+            node.close();
+        }
+    }
+
+    @SneakyThrows
+    private static void write(String name, Client client, StandardQuery query) {
+        SearchResponse response = client.search(queryToRequest(query, null)).actionGet();
+        BytesStreamOutput output = new BytesStreamOutput();
+        response.writeTo(output);
+        Files.write(new File(FIXTURES_DIR, name + ".bin").toPath(), output.bytes().toBytes());
+    }
+
+    @SneakyThrows
+    private static byte[] readBytes(File file) { return Files.readAllBytes(file.toPath()); }
+}
@@ -27,6 +27,10 @@ public final class IgnoreErrors {
            || ((id & IGNORE_VERSION_CONFLICT) != 0 && message.startsWith("VersionConflictEngineException"));
     }
 
+    public static boolean isRejected(String message) {
+        return message != null && message.contains("EsRejectedExecutionException");
+    }
+
     public static IgnoreErrors strict() {
         return from(false, false);
     }
@@ -10,10 +10,11 @@ import io.polyglotted.pgmodel.search.Sleeve;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
-import lombok.ToString;
 import lombok.experimental.Accessors;
 import lombok.experimental.Delegate;
 import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -24,13 +25,13 @@ import static com.google.common.base.Strings.isNullOrEmpty;
 import static com.google.common.collect.ImmutableList.copyOf;
 import static io.polyglotted.pgmodel.search.DocStatus.DELETED;
 import static io.polyglotted.pgmodel.search.DocStatus.EXPIRED;
+import static io.polyglotted.pgmodel.search.IndexKey.keyFrom;
 import static io.polyglotted.pgmodel.search.IndexKey.keyWith;
 import static io.polyglotted.pgmodel.util.ModelUtil.equalsAll;
 import static java.util.Arrays.asList;
 import static java.util.UUID.randomUUID;
 
 @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
-@ToString(includeFieldNames = false, doNotUseGetters = true)
 public final class IndexRecord {
     @Delegate(excludes = KeyExclude.class)
     public final IndexKey indexKey;
@@ -41,7 +42,7 @@ public final class IndexRecord {
     public final Long baseVersion;
     public final String comment;
     public final String updateComment;
-    public final String source;
+    public final BytesReference source;
     public final ImmutableList<String> approvalRoles;
 
     public static <T> IndexRecord fromSleeve(Sleeve<T> sleeve, Function<Sleeve<T>, String> function) {
@@ -64,6 +65,20 @@ public final class IndexRecord {
 
     public IndexKey key() { return indexKey; }
 
+    public String sourceAsString() { return source.toUtf8(); }
+
+    @Override
+    public String toString() {
+        return "IndexRecord(" + indexKey + ", " + action + ", " + status + ", " + updateStatus + ", " + ancestor + ", "
+           + baseVersion + ", " + comment + ", " + updateComment + ", " + sourceAsString() + ", " + approvalRoles + ")";
+    }
+
+    public IndexRecord rebase(long version) {
+        IndexKey current = keyFrom(index(), type(), id(), parent(), version);
+        return new IndexRecord(action == RecordAction.DELETE ? current.delete() : current, action, status, updateStatus,
+           ancestor == null ? null : current.uniqueId(), baseVersion, comment, updateComment, source, approvalRoles);
+    }
+
     public boolean isUpdate() { return action != RecordAction.CREATE && ancestor != null; }
 
     public ActionRequest request(long timestamp, String user) { return action.request(this, timestamp, user); }
@@ -118,9 +133,18 @@ public final class IndexRecord {
         private Long baseVersion;
         private String comment;
         private String updateComment;
-        private String source;
+        private BytesReference source;
         private final List<String> approvalRoles = new ArrayList<>();
 
+        public Builder source(String source) { return source(source == null ? null : new BytesArray(source)); }
+
+        public Builder source(byte[] source) { return source(source == null ? null : new BytesArray(source)); }
+
+        public Builder source(BytesReference source) {
+            this.source = source;
+            return this;
+        }
+
         public Builder approvalRoles(String... roles) {
             return roles.length == 0 ? this : (roles.length == 1 ? approvalRole(roles[0]) : approvalRoles(asList(roles)));
         }
@@ -10,6 +10,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.index.VersionType;
 
 import java.util.Map;
@@ -28,7 +29,7 @@ public enum RecordAction {
             final String id = emptyToNull(record.id()); //auto-generate if empty
             log.debug("creating new record " + nonNull(id, "_auto_") + " for " + record.type() + " at " + record.index());
 
-            return new IndexRequest(record.index(), record.type(), id).source(sourceOf(record, timestamp, user))
+            return new IndexRequest(record.index(), record.type(), id).source(sourceBytes(record, timestamp, user))
                .create(true).parent(record.parent()).versionType(VersionType.EXTERNAL).version(timestamp);
         }
     },
@@ -37,7 +38,7 @@ public enum RecordAction {
         public ActionRequest request(IndexRecord record, long timestamp, String user) {
             log.debug("updating record " + record.id() + " for " + record.type() + " at " + record.index());
 
-            return new IndexRequest(record.index(), record.type(), record.id()).source(sourceOf(record, timestamp, user))
+            return new IndexRequest(record.index(), record.type(), record.id()).source(sourceBytes(record, timestamp, user))
                .parent(record.parent()).versionType(VersionType.EXTERNAL_GTE).version(timestamp);
         }
     },
@@ -47,7 +48,7 @@ public enum RecordAction {
             final String id = emptyToNull(record.id()); //auto-generate if empty
             log.debug("overwriting record " + nonNull(id, "_auto_") + " for " + record.type() + " at " + record.index());
 
-            return new IndexRequest(record.index(), record.type(), id).source(sourceOf(record, timestamp, user))
+            return new IndexRequest(record.index(), record.type(), id).source(sourceBytes(record, timestamp, user))
                .parent(record.parent()).versionType(VersionType.FORCE).version(timestamp);
         }
     },
@@ -72,33 +73,19 @@ public enum RecordAction {
 
     @VisibleForTesting
     public static String sourceOf(IndexRecord record, long timestamp, String user) {
-        StringBuilder builder = new StringBuilder();
-        builder.append(record.source.substring(0, record.source.length() - 1));
-
-        if (record.source.length() > 2) builder.append(",");
-        if (record.ancestor != null)
-            builder.append("\"").append(ANCESTOR_FIELD).append("\":\"").append(record.ancestor).append("\",");
-        if (record.status != null)
-            builder.append("\"").append(STATUS_FIELD).append("\":\"").append(record.status.name()).append("\",");
-        if (record.comment != null)
-            builder.append("\"").append(COMMENT_FIELD).append("\":\"").append(record.comment).append("\",");
-        if (record.baseVersion != null)
-            builder.append("\"").append(BASEVERSION_FIELD).append("\":\"").append(record.baseVersion).append("\",");
-        if (!record.approvalRoles.isEmpty()) {
-            builder.append("\"").append(APPROVAL_ROLES_FIELD).append("\":[");
-            for (int i = 0; i < record.approvalRoles.size(); i++) {
-                if (i != 0) builder.append(",");
-                builder.append("\"").append(record.approvalRoles.get(i)).append("\"");
-            }
-            builder.append("],");
-        }
+        return sourceBytes(record, timestamp, user).toUtf8();
+    }
 
-        builder.append("\"").append(BASEKEY_FIELD).append("\":\"").append(nonNull(record.id(), "_auto_")).append("\",");
-        builder.append("\"").append(TIMESTAMP_FIELD).append("\":\"").append(timestamp).append("\"");
-        builder.append(",\"").append(USER_FIELD).append("\":\"").append(user).append("\"");
-        builder.append("}");
+    static BytesReference sourceBytes(IndexRecord record, long timestamp, String user) {
+        SourceWriter writer = SourceWriter.open(record.source);
+        if (record.ancestor != null) writer.field(ANCESTOR_FIELD, record.ancestor);
+        if (record.status != null) writer.field(STATUS_FIELD, record.status.name());
+        if (record.comment != null) writer.field(COMMENT_FIELD, record.comment);
+        if (record.baseVersion != null) writer.field(BASEVERSION_FIELD, String.valueOf(record.baseVersion));
+        if (!record.approvalRoles.isEmpty()) writer.field(APPROVAL_ROLES_FIELD, record.approvalRoles);
 
-        return builder.toString();
+        return writer.field(BASEKEY_FIELD, nonNull(record.id(), "_auto_"))
+           .field(TIMESTAMP_FIELD, String.valueOf(timestamp)).field(USER_FIELD, user).close();
     }
 
     static String nonNull(String nullable, String defVal) { return isNullOrEmpty(nullable) ? defVal : nullable; }
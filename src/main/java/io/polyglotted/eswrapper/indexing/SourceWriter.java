@@ -0,0 +1,150 @@
+package io.polyglotted.eswrapper.indexing;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+final class SourceWriter {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int RETAINED_CAPACITY = 1024 * 1024;
+    private static final char[] NULL = "null".toCharArray();
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final ThreadLocal<SourceWriter> WRITERS = ThreadLocal.withInitial(SourceWriter::new);
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int count;
+    private boolean hasFields;
+
+    static SourceWriter open(BytesReference source) {
+        SourceWriter writer = WRITERS.get();
+        writer.begin(source);
+        return writer;
+    }
+
+    SourceWriter field(String name, String value) {
+        writeName(name);
+        writeString(value);
+        return this;
+    }
+
+    SourceWriter field(String name, List<String> values) {
+        writeName(name);
+        writeByte('[');
+        for (int i = 0; i < values.size(); i++) {
+            if (i != 0) writeByte(',');
+            writeString(values.get(i));
+        }
+        writeByte(']');
+        return this;
+    }
+
+    BytesReference close() {
+        writeByte('}');
+        BytesArray result = new BytesArray(Arrays.copyOf(buffer, count));
+        if (buffer.length > RETAINED_CAPACITY) buffer = new byte[INITIAL_CAPACITY];
+        return result;
+    }
+
+    private void begin(BytesReference source) {
+        count = 0;
+        hasFields = false;
+        if (source.length() == 0) {
+            writeByte('{');
+            return;
+        }
+        int start = 0, end = source.length() - 1;
+        while (start <= end && isWhitespace(source.get(start))) start++;
+        while (end >= start && isWhitespace(source.get(end))) end--;
+        checkArgument(start < end && source.get(start) == '{' && source.get(end) == '}', "source must be a json object");
+
+        for (int i = start + 1; i < end; i++) {
+            if (!isWhitespace(source.get(i))) {
+                hasFields = true;
+                break;
+            }
+        }
+        ensureCapacity(end);
+        BytesReference prefix = source.slice(0, end);
+        if (prefix.hasArray()) {
+            System.arraycopy(prefix.array(), prefix.arrayOffset(), buffer, 0, end);
+        } else {
+            for (int i = 0; i < end; i++) buffer[i] = prefix.get(i);
+        }
+        count = end;
+    }
+
+    private void writeName(String name) {
+        if (hasFields) writeByte(',');
+        hasFields = true;
+        writeString(name);
+        writeByte(':');
+    }
+
+    private void writeString(String value) {
+        if (value == null) {
+            for (char c : NULL) writeByte(c);
+            return;
+        }
+        ensureCapacity(count + value.length() * 6 + 2);
+        buffer[count++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer[count++] = '\\';
+                buffer[count++] = (byte) c;
+            } else if (c < 0x20) {
+                writeControl(c);
+            } else if (c < 0x80) {
+                buffer[count++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[count++] = (byte) (0xc0 | (c >> 6));
+                buffer[count++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+               && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[count++] = (byte) (0xf0 | (codePoint >> 18));
+                buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buffer[count++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                writeControl(c);
+            } else {
+                buffer[count++] = (byte) (0xe0 | (c >> 12));
+                buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[count++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        buffer[count++] = '"';
+    }
+
+    private void writeControl(char c) {
+        buffer[count++] = '\\';
+        switch (c) {
+            case '\n': buffer[count++] = 'n'; break;
+            case '\r': buffer[count++] = 'r'; break;
+            case '\t': buffer[count++] = 't'; break;
+            case '\b': buffer[count++] = 'b'; break;
+            case '\f': buffer[count++] = 'f'; break;
+            default:
+                buffer[count++] = 'u';
+                buffer[count++] = HEX[(c >> 12) & 0xf];
+                buffer[count++] = HEX[(c >> 8) & 0xf];
+                buffer[count++] = HEX[(c >> 4) & 0xf];
+                buffer[count++] = HEX[c & 0xf];
+        }
+    }
+
+    private void writeByte(char c) {
+        ensureCapacity(count + 1);
+        buffer[count++] = (byte) c;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, capacity));
+    }
+
+    private static boolean isWhitespace(byte b) { return b == ' ' || b == '\n' || b == '\r' || b == '\t'; }
+}
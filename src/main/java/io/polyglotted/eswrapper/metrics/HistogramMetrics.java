@@ -0,0 +1,52 @@
+package io.polyglotted.eswrapper.metrics;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class HistogramMetrics implements OperationMetrics {
+    private final ConcurrentMap<String, Stats> stats = new ConcurrentHashMap<>();
+
+    @Override
+    public void record(String operation, String index, String type, long tookNanos, int items, long requestBytes,
+                       long responseBytes, Throwable failure) {
+        Stats entry = stats.computeIfAbsent(key(operation, index, type), k -> new Stats());
+        entry.latency.record(tookNanos);
+        entry.items.add(items);
+        entry.requestBytes.add(requestBytes);
+        entry.responseBytes.add(responseBytes);
+        if (failure != null) entry.errors.computeIfAbsent(failure.getClass().getSimpleName(), k -> new LongAdder())
+           .increment();
+    }
+
+    public Stats stats(String operation, String index, String type) { return stats.get(key(operation, index, type)); }
+
+    public Map<String, Stats> snapshot() { return ImmutableMap.copyOf(stats); }
+
+    private static String key(String operation, String index, String type) {
+        return operation + "|" + index + "|" + type;
+    }
+
+    public static final class Stats {
+        public final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder items = new LongAdder();
+        private final LongAdder requestBytes = new LongAdder();
+        private final LongAdder responseBytes = new LongAdder();
+        private final ConcurrentMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+        public long items() { return items.sum(); }
+
+        public long requestBytes() { return requestBytes.sum(); }
+
+        public long responseBytes() { return responseBytes.sum(); }
+
+        public Map<String, Long> errors() {
+            ImmutableMap.Builder<String, Long> result = ImmutableMap.builder();
+            for (Map.Entry<String, LongAdder> entry : errors.entrySet()) result.put(entry.getKey(), entry.getValue().sum());
+            return result.build();
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package io.polyglotted.eswrapper.metrics;
+
+public interface OperationMetrics {
+    OperationMetrics NONE = (operation, index, type, tookNanos, items, requestBytes, responseBytes, failure) -> {};
+
+    void record(String operation, String index, String type, long tookNanos, int items, long requestBytes,
+                long responseBytes, Throwable failure);
+}
@@ -17,6 +17,7 @@ import org.elasticsearch.search.aggregations.bucket.terms.Terms;
 import org.elasticsearch.search.aggregations.bucket.terms.TermsBuilder;
 import org.elasticsearch.search.aggregations.metrics.stats.Stats;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static io.polyglotted.eswrapper.query.ExprConverter.buildFilter;
 import static io.polyglotted.pgmodel.search.query.Aggregates.AscKey;
 import static io.polyglotted.pgmodel.search.query.Aggregates.FieldKey;
@@ -41,6 +42,12 @@ public enum AggsConverter {
             return aggregationBuilder().label(expr.label)
                .type(AggregationType.Max).value(name(), max.getValue());
         }
+
+        @Override
+        void collectFrom(Expression expr, Aggregations aggregations, ColumnarAggregation.Collector collector) {
+            org.elasticsearch.search.aggregations.metrics.max.Max max = aggregations.get(expr.label);
+            collector.metric(name(), false, max.getValue());
+        }
     }, 
     Min {
         @Override
@@ -54,6 +61,12 @@ public enum AggsConverter {
             return aggregationBuilder().label(expr.label)
                .type(AggregationType.Min).value(name(), min.getValue());
         }
+
+        @Override
+        void collectFrom(Expression expr, Aggregations aggregations, ColumnarAggregation.Collector collector) {
+            org.elasticsearch.search.aggregations.metrics.min.Min min = aggregations.get(expr.label);
+            collector.metric(name(), false, min.getValue());
+        }
     }, 
     Sum {
         @Override
@@ -67,6 +80,12 @@ public enum AggsConverter {
             return aggregationBuilder().label(expr.label)
                .type(AggregationType.Sum).value(name(), sum.getValue());
         }
+
+        @Override
+        void collectFrom(Expression expr, Aggregations aggregations, ColumnarAggregation.Collector collector) {
+            org.elasticsearch.search.aggregations.metrics.sum.Sum sum = aggregations.get(expr.label);
+            collector.metric(name(), false, sum.getValue());
+        }
     }, 
     Avg {
         @Override
@@ -80,6 +99,12 @@ public enum AggsConverter {
             return aggregationBuilder().label(expr.label)
                .type(AggregationType.Avg).value(name(), avg.getValue());
         }
+
+        @Override
+        void collectFrom(Expression expr, Aggregations aggregations, ColumnarAggregation.Collector collector) {
+            org.elasticsearch.search.aggregations.metrics.avg.Avg avg = aggregations.get(expr.label);
+            collector.metric(name(), false, avg.getValue());
+        }
     }, 
     Count {
         @Override
@@ -93,6 +118,12 @@ public enum AggsConverter {
             return aggregationBuilder().label(expr.label)
                .type(AggregationType.Count).value(name(), count.getValue());
         }
+
+        @Override
+        void collectFrom(Expression expr, Aggregations aggregations, ColumnarAggregation.Collector collector) {
+            org.elasticsearch.search.aggregations.metrics.valuecount.ValueCount count = aggregations.get(expr.label);
+            collector.metric(name(), true, count.getValue());
+        }
     },
     Term {
         @Override
@@ -126,6 +157,16 @@ public enum AggsConverter {
             }
             return builder;
         }
+
+        @Override
+        void collectFrom(Expression expr, Aggregations aggregations, ColumnarAggregation.Collector collector) {
+            Terms terms = aggregations.get(expr.label);
+            collector.params(terms.getDocCountError(), terms.getSumOfOtherDocCounts());
+            for (Terms.Bucket bucket : terms.getBuckets()) {
+                collector.bucket(bucket.getKey(), 0, bucket.getDocCount(), bucket.getDocCountError(),
+                   bucket.getAggregations());
+            }
+        }
     },
     Statistics {
         @Override
@@ -142,6 +183,16 @@ public enum AggsConverter {
                .value(Min.name(), stats.getMin()).value(Avg.name(), stats.getAvg())
                .value(Sum.name(), stats.getSum());
         }
+
+        @Override
+        void collectFrom(Expression expr, Aggregations aggregations, ColumnarAggregation.Collector collector) {
+            Stats stats = aggregations.get(expr.label);
+            collector.metric(Count.name(), true, stats.getCount());
+            collector.metric(Max.name(), false, stats.getMax());
+            collector.metric(Min.name(), false, stats.getMin());
+            collector.metric(Avg.name(), false, stats.getAvg());
+            collector.metric(Sum.name(), false, stats.getSum());
+        }
     },
     DateHistogram {
         @Override
@@ -171,6 +222,15 @@ public enum AggsConverter {
             }
             return builder;
         }
+
+        @Override
+        void collectFrom(Expression expr, Aggregations aggregations, ColumnarAggregation.Collector collector) {
+            DateHistogram dateHistogram = aggregations.get(expr.label);
+            for (DateHistogram.Bucket bucket : dateHistogram.getBuckets()) {
+                collector.bucket(bucket.getKey(), bucket.getKeyAsDate().getMillis(), bucket.getDocCount(), 0,
+                   bucket.getAggregations());
+            }
+        }
     },
     Filter {
         @Override
@@ -194,6 +254,12 @@ public enum AggsConverter {
             }
             return builder;
         }
+
+        @Override
+        void collectFrom(Expression expr, Aggregations aggregations, ColumnarAggregation.Collector collector) {
+            org.elasticsearch.search.aggregations.bucket.filter.Filter filter = aggregations.get(expr.label);
+            collector.bucket(expr.label, 0, filter.getDocCount(), 0, filter.getAggregations());
+        }
     },
     Children {
         @Override
@@ -217,6 +283,12 @@ public enum AggsConverter {
             }
             return builder;
         }
+
+        @Override
+        void collectFrom(Expression expr, Aggregations aggregations, ColumnarAggregation.Collector collector) {
+            Children children = aggregations.get(expr.label);
+            collector.bucket(expr.label, 0, children.getDocCount(), 0, children.getAggregations());
+        }
     };
 
     public static AbstractAggregationBuilder build(Expression expr) {
@@ -225,6 +297,17 @@ public enum AggsConverter {
 
     abstract AbstractAggregationBuilder buildFrom(Expression expr);
 
+    public static AbstractAggregationBuilder buildTermsPage(Expression expr, int pageSize) {
+        checkArgument(Term.name().equals(expr.operation), "paging is only supported on term aggregations");
+        checkArgument(pageSize > 0, "pageSize must be positive");
+        TermsBuilder termsBuilder = terms(expr.label).field(expr.stringArg(FieldKey))
+           .size(pageSize).shardSize(pageSize).order(Terms.Order.term(true));
+        for (Expression child : expr.children) {
+            termsBuilder.subAggregation(build(child));
+        }
+        return termsBuilder;
+    }
+
     public static Aggregation get(Expression expr, Aggregations aggregations) {
         return getInternal(expr, aggregations).build();
     }
@@ -235,6 +318,12 @@ public enum AggsConverter {
 
     abstract Aggregation.Builder getFrom(Expression expr, Aggregations aggregations);
 
+    public static ColumnarAggregation getColumnar(Expression expr, Aggregations aggregations) {
+        return ColumnarAggregation.columnar(expr, aggregations);
+    }
+
+    abstract void collectFrom(Expression expr, Aggregations aggregations, ColumnarAggregation.Collector collector);
+
     private static Terms.Order orderFrom(Expression expr) {
         String orderVal = expr.stringArg(OrderKey);
         boolean asc = expr.boolArg(AscKey);
@@ -0,0 +1,195 @@
+package io.polyglotted.eswrapper.query;
+
+import com.google.common.collect.ImmutableList;
+import io.polyglotted.pgmodel.search.query.Aggregation;
+import io.polyglotted.pgmodel.search.query.AggregationType;
+import io.polyglotted.pgmodel.search.query.Bucket;
+import io.polyglotted.pgmodel.search.query.Expression;
+import org.elasticsearch.search.aggregations.Aggregations;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static io.polyglotted.pgmodel.search.query.Aggregation.aggregationBuilder;
+
+public final class ColumnarAggregation {
+    public final String label;
+    public final AggregationType type;
+    public final ImmutableList<ColumnarAggregation> children;
+    private final List<String> dictionary;
+    private final int rows;
+    private final int[] offsets;
+    private final int[] keys;
+    private final long[] keyValues;
+    private final long[] docCounts;
+    private final long[] docCountErrors;
+    private final long[] rowDocCountErrors;
+    private final long[] sumOfOtherDocs;
+    private final String[] metrics;
+    private final boolean[] integral;
+    private final double[] values;
+    private volatile Aggregation view;
+
+    private ColumnarAggregation(Collector collector, ImmutableList<ColumnarAggregation> children) {
+        this.label = collector.expr.label;
+        this.type = AggregationType.valueOf(collector.expr.operation);
+        this.children = children;
+        this.dictionary = collector.dictionary.strings;
+        this.rows = collector.rows;
+        this.offsets = collector.offsets.build().toArray();
+        this.keys = collector.keys.build().toArray();
+        this.keyValues = collector.keyValues.build().toArray();
+        this.docCounts = collector.docCounts.build().toArray();
+        this.docCountErrors = collector.docCountErrors.build().toArray();
+        this.rowDocCountErrors = collector.rowDocCountErrors.build().toArray();
+        this.sumOfOtherDocs = collector.sumOfOtherDocs.build().toArray();
+        this.metrics = collector.metrics.toArray(new String[collector.metrics.size()]);
+        this.integral = new boolean[metrics.length];
+        for (int i = 0; i < metrics.length; i++) integral[i] = collector.integral.get(i);
+        this.values = collector.values.build().toArray();
+    }
+
+    static ColumnarAggregation columnar(Expression expr, Aggregations aggregations) {
+        Collector collector = new Collector(expr, new Dictionary());
+        collector.row(aggregations);
+        return collector.build();
+    }
+
+    public Aggregation aggregation() {
+        checkArgument(rows == 1, "aggregation view is only available on the root, use aggregation(row)");
+        if (view == null) view = aggregation(0);
+        return view;
+    }
+
+    public Aggregation aggregation(int row) { return builderFor(row).build(); }
+
+    public ColumnarAggregation child(String label) {
+        for (ColumnarAggregation child : children) if (child.label.equals(label)) return child;
+        throw new IllegalArgumentException("no child aggregation " + label + " under " + this.label);
+    }
+
+    public int rows() { return rows; }
+
+    public int bucketCount() { return docCounts.length; }
+
+    public int bucketStart(int row) { return offsets[row]; }
+
+    public int bucketEnd(int row) { return offsets[row + 1]; }
+
+    public String key(int bucket) { return dictionary.get(keys[bucket]); }
+
+    public long keyValue(int bucket) { return keyValues[bucket]; }
+
+    public long docCount(int bucket) { return docCounts[bucket]; }
+
+    public long docCountError(int bucket) { return docCountErrors[bucket]; }
+
+    public double value(int row, String metric) { return values[row * metrics.length + metricIndex(metric)]; }
+
+    public long longValue(int row, String metric) { return (long) value(row, metric); }
+
+    private int metricIndex(String metric) {
+        for (int i = 0; i < metrics.length; i++) if (metrics[i].equals(metric)) return i;
+        throw new IllegalArgumentException("no metric " + metric + " in " + label);
+    }
+
+    private Aggregation.Builder builderFor(int row) {
+        Aggregation.Builder builder = aggregationBuilder().label(label).type(type);
+        for (int i = 0; i < metrics.length; i++) {
+            double value = values[row * metrics.length + i];
+            if (integral[i]) builder.value(metrics[i], (long) value);
+            else builder.value(metrics[i], value);
+        }
+        if (type == AggregationType.Term) {
+            builder.param("docCountError", rowDocCountErrors[row]).param("sumOfOtherDocs", sumOfOtherDocs[row]);
+        }
+        for (int bucket = offsets[row]; bucket < offsets[row + 1]; bucket++) {
+            Bucket.Builder bucketBuilder = builder.bucketBuilder().key(key(bucket)).docCount(docCounts[bucket]);
+            if (type == AggregationType.Term) bucketBuilder.keyValue(key(bucket)).docCountError(docCountErrors[bucket]);
+            else if (type == AggregationType.DateHistogram) bucketBuilder.keyValue(keyValues[bucket]);
+
+            for (ColumnarAggregation child : children) bucketBuilder.aggregation(child.builderFor(bucket));
+        }
+        return builder;
+    }
+
+    static final class Collector {
+        private final Expression expr;
+        private final Dictionary dictionary;
+        private final List<Collector> children = new ArrayList<>();
+        private final IntStream.Builder offsets = IntStream.builder();
+        private final IntStream.Builder keys = IntStream.builder();
+        private final LongStream.Builder keyValues = LongStream.builder();
+        private final LongStream.Builder docCounts = LongStream.builder();
+        private final LongStream.Builder docCountErrors = LongStream.builder();
+        private final LongStream.Builder rowDocCountErrors = LongStream.builder();
+        private final LongStream.Builder sumOfOtherDocs = LongStream.builder();
+        private final List<String> metrics = new ArrayList<>();
+        private final List<Boolean> integral = new ArrayList<>();
+        private final DoubleStream.Builder values = DoubleStream.builder();
+        private int rows;
+        private int buckets;
+
+        private Collector(Expression expr, Dictionary dictionary) {
+            this.expr = expr;
+            this.dictionary = dictionary;
+            for (Expression child : expr.children) children.add(new Collector(child, dictionary));
+            offsets.add(0);
+        }
+
+        void metric(String name, boolean isIntegral, double value) {
+            if (rows == 0) {
+                metrics.add(name);
+                integral.add(isIntegral);
+            }
+            values.add(value);
+        }
+
+        void params(long docCountError, long sumOfOther) {
+            rowDocCountErrors.add(docCountError);
+            sumOfOtherDocs.add(sumOfOther);
+        }
+
+        void bucket(String key, long keyValue, long docCount, long docCountError, Aggregations aggregations) {
+            keys.add(dictionary.idOf(key));
+            keyValues.add(keyValue);
+            docCounts.add(docCount);
+            docCountErrors.add(docCountError);
+            buckets++;
+            for (Collector child : children) child.row(aggregations);
+        }
+
+        private void row(Aggregations aggregations) {
+            AggsConverter.valueOf(expr.operation).collectFrom(expr, aggregations, this);
+            offsets.add(buckets);
+            rows++;
+        }
+
+        private ColumnarAggregation build() {
+            ImmutableList.Builder<ColumnarAggregation> built = ImmutableList.builder();
+            for (Collector child : children) built.add(child.build());
+            return new ColumnarAggregation(this, built.build());
+        }
+    }
+
+    private static final class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        int idOf(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = strings.size();
+                ids.put(value, id);
+                strings.add(value);
+            }
+            return id;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package io.polyglotted.eswrapper.query;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.polyglotted.pgmodel.search.query.Expression;
+import lombok.SneakyThrows;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.query.FilterBuilder;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Predicates.notNull;
+import static com.google.common.base.Throwables.propagate;
+import static com.google.common.collect.Iterables.filter;
+import static com.google.common.collect.Iterables.toArray;
+import static com.google.common.collect.Iterables.transform;
+import static com.google.common.hash.Hashing.murmur3_128;
+import static io.polyglotted.pgmodel.search.query.Expression.NilExpression;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.elasticsearch.common.xcontent.ToXContent.EMPTY_PARAMS;
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.index.query.FilterBuilders.wrapperFilter;
+
+public final class FilterCache {
+    private final Cache<Expression, Compiled> cache;
+    private final int hotThreshold;
+
+    private FilterCache(long maximumSize, int hotThreshold) {
+        checkArgument(maximumSize > 0, "maximumSize must be positive");
+        checkArgument(hotThreshold > 0, "hotThreshold must be positive");
+        this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+        this.hotThreshold = hotThreshold;
+    }
+
+    public static FilterCache filterCache(long maximumSize, int hotThreshold) {
+        return new FilterCache(maximumSize, hotThreshold);
+    }
+
+    public CacheStats stats() { return cache.stats(); }
+
+    public long size() { return cache.size(); }
+
+    public FilterBuilder buildFilter(Expression expr) {
+        if (expr == null || NilExpression.equals(expr)) return null;
+        Compiled compiled = compiled(expr);
+        byte[] bytes = compiled.hits.incrementAndGet() >= hotThreshold ? compiled.cacheable() : compiled.bytes;
+        return wrapperFilter(bytes, 0, bytes.length);
+    }
+
+    public FilterBuilder[] aggregateFilters(Iterable<Expression> expressions) {
+        return toArray(filter(transform(expressions, this::buildFilter), notNull()), FilterBuilder.class);
+    }
+
+    private Compiled compiled(Expression expr) {
+        try {
+            return cache.get(expr, () -> new Compiled(render(ExprConverter.buildFilter(expr))));
+        } catch (ExecutionException | UncheckedExecutionException ex) {
+            throw propagate(ex.getCause());
+        }
+    }
+
+    @SneakyThrows
+    private static byte[] render(FilterBuilder filter) {
+        XContentBuilder builder = jsonBuilder();
+        filter.toXContent(builder, EMPTY_PARAMS);
+        return builder.bytes().toBytes();
+    }
+
+    private static final class Compiled {
+        final byte[] bytes;
+        final AtomicInteger hits = new AtomicInteger();
+        volatile byte[] cacheable;
+
+        Compiled(byte[] bytes) { this.bytes = bytes; }
+
+        byte[] cacheable() {
+            if (cacheable == null) {
+                cacheable = ("{\"and\":{\"filters\":[" + new String(bytes, UTF_8) + "],\"_cache\":true,"
+                   + "\"_cache_key\":\"pg_" + murmur3_128().hashBytes(bytes) + "\"}}").getBytes(UTF_8);
+            }
+            return cacheable;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package io.polyglotted.eswrapper.query;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import io.polyglotted.pgmodel.search.query.Expression;
+import io.polyglotted.pgmodel.search.query.StandardQuery;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.common.bytes.BytesArray;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Sets.difference;
+import static io.polyglotted.eswrapper.indexing.IndexSerializer.GSON;
+import static io.polyglotted.eswrapper.query.QueryBuilder.queryToRequest;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public final class PreparedQuery {
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\[\"\\{\\{(\\w+)\\}\\}\"\\]|\"\\{\\{(\\w+)\\}\\}\"");
+    private static final Pattern DECLARED = Pattern.compile("\\{\\{(\\w+)\\}\\}");
+    public final ImmutableSet<String> parameters;
+    public final ImmutableList<Expression> aggregates;
+    private final SearchRequest template;
+    private final List<String> literals;
+    private final List<Slot> slots;
+
+    private PreparedQuery(SearchRequest template, List<String> literals, List<Slot> slots, List<Expression> aggregates) {
+        this.template = template;
+        this.literals = literals;
+        this.slots = slots;
+        this.aggregates = ImmutableList.copyOf(aggregates);
+        ImmutableSet.Builder<String> names = ImmutableSet.builder();
+        for (Slot slot : slots) names.add(slot.name);
+        this.parameters = names.build();
+    }
+
+    public static String param(String name) { return "{{" + name + "}}"; }
+
+    public static PreparedQuery prepare(StandardQuery shape) {
+        SearchRequest template = queryToRequest(shape, null);
+        String json = template.source().toUtf8();
+
+        List<String> literals = new ArrayList<>();
+        List<Slot> slots = new ArrayList<>();
+        Matcher matcher = PLACEHOLDER.matcher(json);
+        int last = 0;
+        while (matcher.find()) {
+            literals.add(json.substring(last, matcher.start()));
+            slots.add(matcher.group(1) != null ? new Slot(matcher.group(1), true) : new Slot(matcher.group(2), false));
+            last = matcher.end();
+        }
+        literals.add(json.substring(last));
+        PreparedQuery prepared = new PreparedQuery(template, literals, slots, shape.aggregates);
+
+        Set<String> missing = new TreeSet<>(difference(declaredIn(GSON.toJson(shape.expressions)), prepared.parameters));
+        for (String literal : literals) missing.addAll(declaredIn(literal));
+        checkArgument(missing.isEmpty(), "parameters " + missing + " are not whole values in the prepared query");
+        return prepared;
+    }
+
+    private static Set<String> declaredIn(String expressions) {
+        Set<String> declared = new TreeSet<>();
+        Matcher matcher = DECLARED.matcher(expressions);
+        while (matcher.find()) declared.add(matcher.group(1));
+        return declared;
+    }
+
+    public SearchRequest bind(Map<String, ?> values) {
+        StringBuilder source = new StringBuilder(literals.get(0));
+        for (int i = 0; i < slots.size(); i++) {
+            Slot slot = slots.get(i);
+            checkArgument(values.containsKey(slot.name), "unbound parameter " + slot.name);
+            Object value = values.get(slot.name);
+            if (slot.inArray && !(value instanceof Collection)) source.append('[').append(GSON.toJson(value)).append(']');
+            else source.append(GSON.toJson(value));
+            source.append(literals.get(i + 1));
+        }
+        return new SearchRequest(template, template).source(new BytesArray(source.toString().getBytes(UTF_8)));
+    }
+
+    private static final class Slot {
+        final String name;
+        final boolean inArray;
+
+        Slot(String name, boolean inArray) {
+            this.name = name;
+            this.inArray = inArray;
+        }
+    }
+}
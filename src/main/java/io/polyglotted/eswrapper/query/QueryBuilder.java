@@ -32,6 +32,7 @@ import static org.elasticsearch.common.unit.TimeValue.timeValueSeconds;
 import static org.elasticsearch.common.xcontent.XContentHelper.convertToJson;
 import static org.elasticsearch.index.query.FilterBuilders.andFilter;
 import static org.elasticsearch.index.query.FilterBuilders.idsFilter;
+import static org.elasticsearch.index.query.FilterBuilders.rangeFilter;
 import static org.elasticsearch.index.query.QueryBuilders.constantScoreQuery;
 import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
 import static org.elasticsearch.search.sort.SortBuilders.fieldSort;
@@ -47,8 +48,13 @@ public abstract class QueryBuilder {
     }
 
     public static SearchRequest filterToRequest(Expression filter, String... indices) {
-        SearchSourceBuilder source = new SearchSourceBuilder().size(DEFAULT_MAXIMUM)
-           .query(constantScoreQuery(buildFilter(checkNotNull(filter)))).version(true);
+        return filterToRequest(filter, null, indices);
+    }
+
+    public static SearchRequest filterToRequest(Expression filter, FilterCache filterCache, String... indices) {
+        checkNotNull(filter);
+        SearchSourceBuilder source = new SearchSourceBuilder().size(DEFAULT_MAXIMUM).query(constantScoreQuery(
+           filterCache == null ? buildFilter(filter) : filterCache.buildFilter(filter))).version(true);
         return trace(new SearchRequest(indices).indicesOptions(lenientExpandOpen()).source(source));
     }
 
@@ -57,16 +63,30 @@ public abstract class QueryBuilder {
         return trace(new SearchRequest(indices).indicesOptions(lenientExpandOpen()).source(source));
     }
 
+    public static SearchRequest termsPageRequest(Expression filter, AbstractAggregationBuilder aggs, String field,
+                                                 String after, String... indices) {
+        FilterBuilder filterBuilder = buildFilter(filter);
+        if (after != null) filterBuilder = filterBuilder == null ? rangeFilter(field).gt(after) :
+           andFilter(filterBuilder, rangeFilter(field).gt(after));
+        SearchSourceBuilder source = new SearchSourceBuilder().size(0).aggregation(aggs)
+           .query(filterBuilder == null ? matchAllQuery() : constantScoreQuery(filterBuilder));
+        return trace(new SearchRequest(indices).indicesOptions(lenientExpandOpen()).source(source));
+    }
+
     public static SearchScrollRequest scrollRequest(StandardScroll scroll) {
         return new SearchScrollRequest(scroll.scrollId).scroll(timeValueMillis(scroll.scrollTimeInMillis));
     }
 
     public static SearchRequest queryToRequest(StandardQuery query, FilterBuilder postFilter) {
+        return queryToRequest(query, postFilter, null);
+    }
+
+    public static SearchRequest queryToRequest(StandardQuery query, FilterBuilder postFilter, FilterCache filterCache) {
         SearchRequest request = new SearchRequest(toStrArray(query.indices)).types(toStrArray(query.types));
         SearchSourceBuilder builder = new SearchSourceBuilder().version(true);
         setFields(builder, Iterables.concat(query.fields, singleton(PARENT_META)));
         setHints(request, builder, query.queryHints);
-        setFilters(builder, query);
+        setFilters(builder, query, filterCache);
         setAggregations(builder, query);
         setOrder(builder, query);
         setScrollOrLimits(request, builder, query);
@@ -94,7 +114,12 @@ public abstract class QueryBuilder {
 
     @VisibleForTesting
     static void setFilters(SearchSourceBuilder builder, StandardQuery query) {
-        FilterBuilder[] filters = aggregateFilters(query.expressions);
+        setFilters(builder, query, null);
+    }
+
+    private static void setFilters(SearchSourceBuilder builder, StandardQuery query, FilterCache filterCache) {
+        FilterBuilder[] filters = filterCache == null ? aggregateFilters(query.expressions)
+           : filterCache.aggregateFilters(query.expressions);
         if (filters.length == 0)
             builder.query(matchAllQuery());
         else if (filters.length == 1)
@@ -0,0 +1,53 @@
+package io.polyglotted.eswrapper.query;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import io.polyglotted.pgmodel.search.IndexKey;
+import lombok.SneakyThrows;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.search.SearchHit;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+
+import static io.polyglotted.eswrapper.query.ModelQueryUtil.keyFrom;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+public interface RawResultBuilder<T> extends ResultBuilder<T> {
+
+    @Override
+    default List<T> buildFrom(SearchResponse response) {
+        ImmutableList.Builder<T> results = ImmutableList.builder();
+        for (SearchHit hit : response.getHits()) {
+            results.add(buildRaw(keyFrom(hit), hit.sourceRef()));
+        }
+        return results.build();
+    }
+
+    @Override
+    default T buildFrom(GetResponse response) {
+        return buildRaw(keyFrom(response), response.getSourceAsBytesRef());
+    }
+
+    @Override
+    @SneakyThrows(IOException.class)
+    default T buildResult(IndexKey key, ImmutableMap<String, Object> source) {
+        return buildRaw(key, source.isEmpty() ? null : jsonBuilder().map(source).bytes());
+    }
+
+    T buildRaw(IndexKey key, BytesReference source);
+
+    RawResultBuilder<BytesReference> RawSourceBuilder = (key, source) -> source == null ? BytesArray.EMPTY : source;
+
+    static <T> RawResultBuilder<T> StreamingObjectBuilder(final Gson gson, Class<T> clazz) {
+        return (key, source) -> source == null || source.length() == 0 ? null :
+           gson.fromJson(new JsonReader(new InputStreamReader(source.streamInput(), UTF_8)), clazz);
+    }
+}
@@ -0,0 +1,156 @@
+package io.polyglotted.eswrapper.services;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static io.polyglotted.eswrapper.indexing.IgnoreErrors.isRejected;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+@Slf4j
+public final class AdaptiveBatcher {
+    private static final double SMOOTHING = 0.3;
+    private final int minSize;
+    private final int maxSize;
+    private final int increaseStep;
+    private final double decreaseFactor;
+    private final long latencyTargetMillis;
+    private final long maxBytes;
+    private volatile int targetSize;
+    private volatile double throughput = 0;
+    private volatile double bytesThroughput = 0;
+    private volatile double rejectionRate = 0;
+    private volatile long lastTookMillis = 0;
+
+    private AdaptiveBatcher(int minSize, int maxSize, int initialSize, int increaseStep,
+                            double decreaseFactor, long latencyTargetMillis, long maxBytes) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.increaseStep = increaseStep;
+        this.decreaseFactor = decreaseFactor;
+        this.latencyTargetMillis = latencyTargetMillis;
+        this.maxBytes = maxBytes;
+        this.targetSize = initialSize;
+    }
+
+    public int targetSize() { return targetSize; }
+
+    public double throughput() { return throughput; }
+
+    public double bytesThroughput() { return bytesThroughput; }
+
+    public double rejectionRate() { return rejectionRate; }
+
+    public long lastTookMillis() { return lastTookMillis; }
+
+    BulkResponse bulk(Client client, BulkRequest request) {
+        List<ActionRequest> requests = request.requests();
+        List<BulkItemResponse> items = new ArrayList<>(requests.size());
+        long tookInMillis = 0;
+
+        int from = 0;
+        while (from < requests.size()) {
+            BulkRequest chunk = chunk(request, from);
+            from += chunk.numberOfActions();
+
+            BulkResponse response = client.bulk(chunk).actionGet();
+            record(chunk, response);
+            tookInMillis += response.getTookInMillis();
+            for (BulkItemResponse item : response) items.add(item);
+        }
+        return new BulkResponse(items.toArray(new BulkItemResponse[items.size()]), tookInMillis);
+    }
+
+    CompletableFuture<BulkResponse> bulkAsync(Client client, BulkRequest request) {
+        return bulkAsync(client, request, 0, new ArrayList<>(request.numberOfActions()), 0);
+    }
+
+    private CompletableFuture<BulkResponse> bulkAsync(Client client, BulkRequest request, int from,
+                                                      List<BulkItemResponse> items, long tookInMillis) {
+        if (from >= request.numberOfActions())
+            return completedFuture(new BulkResponse(items.toArray(new BulkItemResponse[items.size()]), tookInMillis));
+
+        BulkRequest chunk = chunk(request, from);
+        ListenerFuture<BulkResponse> future = new ListenerFuture<>();
+        client.bulk(chunk, future);
+        return future.thenCompose(response -> {
+            record(chunk, response);
+            for (BulkItemResponse item : response) items.add(item);
+            return bulkAsync(client, request, from + chunk.numberOfActions(), items,
+               tookInMillis + response.getTookInMillis());
+        });
+    }
+
+    private BulkRequest chunk(BulkRequest request, int from) {
+        List<ActionRequest> requests = request.requests();
+        BulkRequest chunk = new BulkRequest().refresh(false).timeout(request.timeout())
+           .consistencyLevel(request.consistencyLevel());
+        int size = targetSize;
+        int next = from;
+        while (next < requests.size() && chunk.numberOfActions() < size && chunk.estimatedSizeInBytes() < maxBytes)
+            chunk.add(requests.get(next++));
+        if (next == requests.size()) chunk.refresh(request.refresh());
+        return chunk;
+    }
+
+    synchronized void record(BulkRequest chunk, BulkResponse response) {
+        int actions = chunk.numberOfActions();
+        long took = Math.max(response.getTookInMillis(), 1);
+        int rejected = 0;
+        for (BulkItemResponse item : response) if (item.isFailed() && isRejected(item.getFailureMessage())) rejected++;
+
+        lastTookMillis = took;
+        throughput = smooth(throughput, actions * 1000.0 / took);
+        bytesThroughput = smooth(bytesThroughput, chunk.estimatedSizeInBytes() * 1000.0 / took);
+        rejectionRate = smooth(rejectionRate, (double) rejected / actions);
+
+        if (rejected > 0 || took > latencyTargetMillis) {
+            targetSize = Math.max(minSize, (int) (targetSize * decreaseFactor));
+        } else if (actions >= targetSize) {
+            targetSize = Math.min(maxSize, targetSize + increaseStep);
+        }
+        log.debug("bulk of " + actions + " took " + took + "ms with " + rejected + " rejections, target size now " +
+           targetSize);
+    }
+
+    private static double smooth(double current, double sample) {
+        return current == 0 ? sample : current + SMOOTHING * (sample - current);
+    }
+
+    public static Builder batcherBuilder() {
+        return new Builder();
+    }
+
+    @Setter
+    @Accessors(fluent = true, chain = true)
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class Builder {
+        private int minSize = 50;
+        private int maxSize = 5000;
+        private int initialSize = 500;
+        private int increaseStep = 50;
+        private double decreaseFactor = 0.5;
+        private long latencyTargetMillis = 1000;
+        private long maxBytes = 10 * 1024 * 1024;
+
+        public AdaptiveBatcher build() {
+            checkArgument(minSize > 0 && minSize <= maxSize, "minSize must be positive and not above maxSize");
+            checkArgument(initialSize >= minSize && initialSize <= maxSize, "initialSize must be within bounds");
+            checkArgument(decreaseFactor > 0 && decreaseFactor < 1, "decreaseFactor must be between 0 and 1");
+            return new AdaptiveBatcher(minSize, maxSize, initialSize, increaseStep, decreaseFactor,
+               latencyTargetMillis, maxBytes);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package io.polyglotted.eswrapper.services;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.polyglotted.eswrapper.indexing.IgnoreErrors;
+import io.polyglotted.eswrapper.indexing.IndexRecord;
+import io.polyglotted.pgmodel.search.IndexKey;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static io.polyglotted.eswrapper.indexing.IgnoreErrors.strict;
+import static io.polyglotted.eswrapper.services.IndexerException.indexingFailed;
+import static io.polyglotted.eswrapper.services.ModelIndexUtil.indexKeyOf;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+@Slf4j
+public final class BulkPipeline implements AutoCloseable {
+    private final Function<BulkRequest, CompletableFuture<BulkResponse>> sender;
+    private final IgnoreErrors ignoreErrors;
+    private final int maxActions;
+    private final long maxBytes;
+    private final int maxInFlight;
+    private final String user;
+    private final Semaphore inFlight;
+    private final ScheduledExecutorService flusher;
+    private BulkRequest current = new BulkRequest().refresh(false);
+    private List<Pending> pending = new ArrayList<>();
+    private boolean closed = false;
+
+    private BulkPipeline(Function<BulkRequest, CompletableFuture<BulkResponse>> sender, IgnoreErrors ignoreErrors,
+                         int maxActions, long maxBytes, int maxInFlight, long flushIntervalMillis, String user) {
+        this.sender = sender;
+        this.ignoreErrors = ignoreErrors;
+        this.maxActions = maxActions;
+        this.maxBytes = maxBytes;
+        this.maxInFlight = maxInFlight;
+        this.user = user;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.flusher = flushIntervalMillis <= 0 ? null : Executors.newSingleThreadScheduledExecutor(
+           new ThreadFactoryBuilder().setDaemon(true).setNameFormat("bulk-pipeline-%d").build());
+        if (flusher != null)
+            flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, MILLISECONDS);
+    }
+
+    public CompletableFuture<IndexKey> submit(IndexRecord record) {
+        return submit(record, System.currentTimeMillis(), user);
+    }
+
+    public CompletableFuture<IndexKey> submit(IndexRecord record, long timestamp, String user) {
+        CompletableFuture<IndexKey> future = new CompletableFuture<>();
+        Batch batch = null;
+        synchronized (this) {
+            checkState(!closed, "bulk pipeline is already closed");
+            current.add(record.request(timestamp, user));
+            pending.add(new Pending(record.key(), future));
+            if (current.numberOfActions() >= maxActions || current.estimatedSizeInBytes() >= maxBytes) batch = take();
+        }
+        if (batch != null) send(batch);
+        return future;
+    }
+
+    public void flush() {
+        Batch batch;
+        synchronized (this) { batch = take(); }
+        if (batch != null) send(batch);
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            if (flusher != null) flusher.shutdownNow();
+        }
+        flush();
+        inFlight.acquireUninterruptibly(maxInFlight);
+        inFlight.release(maxInFlight);
+    }
+
+    private Batch take() {
+        if (current.numberOfActions() == 0) return null;
+        Batch batch = new Batch(current, pending);
+        current = new BulkRequest().refresh(false);
+        pending = new ArrayList<>();
+        return batch;
+    }
+
+    //only the producer that filled the batch waits for a permit, the others keep adding to the next one
+    private void send(Batch batch) {
+        inFlight.acquireUninterruptibly();
+        CompletableFuture<BulkResponse> response;
+        try {
+            response = sender.apply(batch.request);
+        } catch (RuntimeException ex) {
+            response = new CompletableFuture<>();
+            response.completeExceptionally(ex);
+        }
+        response.whenComplete((result, failure) -> {
+            inFlight.release();
+            if (failure == null) {
+                complete(result, batch.requested, ignoreErrors);
+                return;
+            }
+            Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+            log.error("bulk pipeline request failed: " + cause.getMessage());
+            for (Pending item : batch.requested) item.future.completeExceptionally(cause);
+        });
+    }
+
+    private static void complete(BulkResponse response, List<Pending> requested, IgnoreErrors ignore) {
+        BulkItemResponse[] items = response.getItems();
+        for (int i = 0; i < requested.size(); i++) {
+            Pending item = requested.get(i);
+            String failureMessage = items[i].getFailureMessage();
+
+            if (ignore.ignoreFailure(failureMessage)) {
+                item.future.complete(indexKeyOf(items[i], item.key.parent));
+            } else {
+                item.future.completeExceptionally(indexingFailed(ImmutableMap.of(
+                   indexKeyOf(items[i], null), failureMessage)));
+            }
+        }
+    }
+
+    public static Builder pipelineBuilder(Client client) {
+        return new Builder(client);
+    }
+
+    @RequiredArgsConstructor
+    private static final class Batch {
+        final BulkRequest request;
+        final List<Pending> requested;
+    }
+
+    @RequiredArgsConstructor
+    private static final class Pending {
+        final IndexKey key;
+        final CompletableFuture<IndexKey> future;
+    }
+
+    @Setter
+    @Accessors(fluent = true, chain = true)
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class Builder {
+        private final Client client;
+        @Setter(AccessLevel.PACKAGE)
+        private Function<BulkRequest, CompletableFuture<BulkResponse>> sender;
+        private IgnoreErrors ignoreErrors = strict();
+        private int maxActions = 1000;
+        private long maxBytes = 5 * 1024 * 1024;
+        private int maxInFlight = 2;
+        private long flushIntervalMillis = 0;
+        private String user = "System";
+
+        public BulkPipeline build() {
+            checkArgument(maxActions > 0, "maxActions must be positive");
+            checkArgument(maxInFlight > 0, "maxInFlight must be positive");
+            return new BulkPipeline(sender == null ? this::clientBulk : sender, ignoreErrors, maxActions, maxBytes,
+               maxInFlight, flushIntervalMillis, user);
+        }
+
+        private CompletableFuture<BulkResponse> clientBulk(BulkRequest request) {
+            ListenerFuture<BulkResponse> future = new ListenerFuture<>();
+            client.bulk(request, future);
+            return future;
+        }
+    }
+}
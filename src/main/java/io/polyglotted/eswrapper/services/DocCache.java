@@ -0,0 +1,117 @@
+package io.polyglotted.eswrapper.services;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import io.polyglotted.pgmodel.search.IndexKey;
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.DocumentRequest;
+import org.elasticsearch.action.get.GetResponse;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.cache.RemovalCause.REPLACED;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+public final class DocCache {
+    private static final int ENTRY_OVERHEAD = 64;
+    private final Cache<CacheKey, GetResponse> cache;
+    private final ConcurrentMap<String, Set<CacheKey>> keysByDoc = new ConcurrentHashMap<>();
+
+    private DocCache(long maximumSize, long maximumWeight, long ttlMillis) {
+        RemovalListener<CacheKey, GetResponse> listener = removal -> {
+            if (removal.getCause() != REPLACED) unlink(removal.getKey());
+        };
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
+        if (maximumWeight > 0) {
+            builder.maximumWeight(maximumWeight).weigher((CacheKey key, GetResponse response) ->
+               ENTRY_OVERHEAD + (response.isSourceEmpty() ? 0 : response.getSourceAsBytesRef().length()));
+        } else {
+            builder.maximumSize(maximumSize);
+        }
+        if (ttlMillis > 0) builder.expireAfterWrite(ttlMillis, MILLISECONDS);
+        this.cache = builder.removalListener(listener).build();
+    }
+
+    public CacheStats stats() { return cache.stats(); }
+
+    public long hitCount() { return cache.stats().hitCount(); }
+
+    public long missCount() { return cache.stats().missCount(); }
+
+    public long size() { return cache.size(); }
+
+    public void invalidate(String type, String id) {
+        Set<CacheKey> keys = keysByDoc.remove(docId(type, id));
+        if (keys != null) cache.invalidateAll(keys);
+    }
+
+    public void invalidateAll() { cache.invalidateAll(); }
+
+    GetResponse get(IndexKey key) { return get(key.index, key.type, key.id, key.parent); }
+
+    GetResponse get(String index, String type, String id, String parent) {
+        return cache.getIfPresent(new CacheKey(index, type, id, parent));
+    }
+
+    void put(IndexKey key, GetResponse response) { put(key.index, key.type, key.id, key.parent, response); }
+
+    void put(String index, String type, String id, String parent, GetResponse response) {
+        CacheKey cacheKey = new CacheKey(index, type, id, parent);
+        keysByDoc.computeIfAbsent(docId(type, id), k -> ConcurrentHashMap.newKeySet()).add(cacheKey);
+        cache.put(cacheKey, response);
+    }
+
+    void invalidate(Iterable<? extends ActionRequest> requests) {
+        for (ActionRequest request : requests) {
+            if (!(request instanceof DocumentRequest)) continue;
+            DocumentRequest<?> document = (DocumentRequest<?>) request;
+            if (document.id() != null) invalidate(document.type(), document.id());
+        }
+    }
+
+    private void unlink(CacheKey key) {
+        keysByDoc.computeIfPresent(docId(key.type, key.id), (docId, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private static String docId(String type, String id) { return type + "/" + id; }
+
+    public static Builder cacheBuilder() {
+        return new Builder();
+    }
+
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static final class CacheKey {
+        final String index;
+        final String type;
+        final String id;
+        final String parent;
+    }
+
+    @Setter
+    @Accessors(fluent = true, chain = true)
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class Builder {
+        private long maximumSize = 10000;
+        private long maximumWeight = 0;
+        private long ttlMillis = 60000;
+
+        public DocCache build() {
+            checkArgument(maximumSize > 0 || maximumWeight > 0, "cache must be bounded by size or weight");
+            return new DocCache(maximumSize, maximumWeight, ttlMillis);
+        }
+    }
+}
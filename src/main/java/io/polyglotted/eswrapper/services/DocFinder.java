@@ -1,47 +1,174 @@
 package io.polyglotted.eswrapper.services;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import io.polyglotted.eswrapper.query.ResultBuilder;
 import io.polyglotted.pgmodel.search.IndexKey;
+import org.elasticsearch.action.ActionFuture;
 import org.elasticsearch.action.get.*;
 import org.elasticsearch.client.Client;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.base.Strings.nullToEmpty;
+import static com.google.common.collect.Iterables.transform;
 import static io.polyglotted.eswrapper.ElasticConstants.PARENT_META;
 import static io.polyglotted.eswrapper.ElasticConstants.SOURCE_META;
 import static io.polyglotted.eswrapper.services.ModelIndexUtil.checkMultiGet;
+import static java.util.concurrent.CompletableFuture.allOf;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 
 public abstract class DocFinder {
+    private static final int MAX_CONCURRENT_CHUNKS = 8;
 
     public static <T> T findBy(Client client, String index, String type, String id, String
        parent, ResultBuilder<T> builder) {
-        GetResponse response = client.get(new GetRequest(index, type, id).parent(parent)
-           .fields(SOURCE_META, PARENT_META)).actionGet();
-        return response.isExists() ? builder.buildFrom(response) : null;
+        return findBy(client, null, index, type, id, parent, builder);
+    }
+
+    public static <T> T findBy(Client client, DocCache cache, String index, String type, String id, String
+       parent, ResultBuilder<T> builder) {
+        return findBy(client, cache, null, index, type, id, parent, builder);
+    }
+
+    public static <T> T findBy(Client client, DocCache cache, RequestCoalescer coalescer, String index, String type,
+                               String id, String parent, ResultBuilder<T> builder) {
+        GetResponse cached = cache == null ? null : cache.get(index, type, id, parent);
+        if (cached != null) return builder.buildFrom(cached);
+
+        GetResponse response = coalescer != null ? coalescer.get(index, type, id, parent) : client.get(
+           new GetRequest(index, type, id).parent(parent).fields(SOURCE_META, PARENT_META)).actionGet();
+        if (!response.isExists()) return null;
+        if (cache != null) cache.put(index, type, id, parent, response);
+        return builder.buildFrom(response);
     }
 
     public static <T> List<T> findAllBy(Client client, Iterable<IndexKey> indexKeys, ResultBuilder<T>
        resultBuilder, boolean ignoreFailure) {
-        ImmutableList.Builder<T> result = ImmutableList.builder();
+        return findAllBy(client, null, indexKeys, resultBuilder, ignoreFailure);
+    }
+
+    public static <T> List<T> findAllBy(Client client, DocCache cache, Iterable<IndexKey> indexKeys, ResultBuilder<T>
+       resultBuilder, boolean ignoreFailure) {
+        return findAllBy(client, cache, indexKeys, resultBuilder, ignoreFailure, 0);
+    }
+
+    public static <T> CompletableFuture<List<T>> findAllByAsync(Client client, Iterable<IndexKey> indexKeys,
+                                                                ResultBuilder<T> resultBuilder, boolean ignoreFailure) {
+        return findAllByAsync(client, null, indexKeys, resultBuilder, ignoreFailure, 0);
+    }
+
+    public static <T> CompletableFuture<List<T>> findAllByAsync(Client client, DocCache cache, Iterable<IndexKey>
+       indexKeys, ResultBuilder<T> resultBuilder, boolean ignoreFailure, int chunkSize) {
+        Lookup lookup = new Lookup(cache, indexKeys);
+        return multiGetAsync(client, lookup.misses, chunkSize).thenApply(fetched ->
+           lookup.build(cache, fetched, resultBuilder, ignoreFailure));
+    }
+
+    public static <T> List<T> findAllBy(Client client, DocCache cache, Iterable<IndexKey> indexKeys, ResultBuilder<T>
+       resultBuilder, boolean ignoreFailure, int chunkSize) {
+        Lookup lookup = new Lookup(cache, indexKeys);
+        return lookup.build(cache, multiGet(client, lookup.misses, chunkSize), resultBuilder, ignoreFailure);
+    }
+
+    private static GetResponse[] multiGet(Client client, List<IndexKey> keys, int chunkSize) {
+        GetResponse[] result = new GetResponse[keys.size()];
+        if (keys.isEmpty()) return result;
+
+        List<List<Integer>> chunks = chunks(keys, chunkSize);
+        List<ActionFuture<MultiGetResponse>> futures = new ArrayList<>(chunks.size());
+        for (int c = 0; c < chunks.size(); c++) {
+            if (c >= MAX_CONCURRENT_CHUNKS) collect(futures.get(c - MAX_CONCURRENT_CHUNKS).actionGet(),
+               chunks.get(c - MAX_CONCURRENT_CHUNKS), result);
+            futures.add(client.multiGet(multiGetRequest(transform(chunks.get(c), keys::get))));
+        }
+        for (int c = Math.max(0, chunks.size() - MAX_CONCURRENT_CHUNKS); c < chunks.size(); c++)
+            collect(futures.get(c).actionGet(), chunks.get(c), result);
+        return result;
+    }
+
+    private static CompletableFuture<GetResponse[]> multiGetAsync(Client client, List<IndexKey> keys, int chunkSize) {
+        GetResponse[] result = new GetResponse[keys.size()];
+        if (keys.isEmpty()) return completedFuture(result);
+
+        List<List<Integer>> chunks = chunks(keys, chunkSize);
+        List<CompletableFuture<Void>> futures = new ArrayList<>(chunks.size());
+        for (int c = 0; c < chunks.size(); c++) {
+            List<Integer> chunk = chunks.get(c);
+            CompletableFuture<Void> previous = c < MAX_CONCURRENT_CHUNKS ? completedFuture(null) :
+               futures.get(c - MAX_CONCURRENT_CHUNKS);
+            futures.add(previous.thenCompose(ignored -> {
+                ListenerFuture<MultiGetResponse> future = new ListenerFuture<>();
+                client.multiGet(multiGetRequest(transform(chunk, keys::get)), future);
+                return future;
+            }).thenAccept(response -> collect(response, chunk, result)));
+        }
+        return allOf(futures.toArray(new CompletableFuture[futures.size()])).thenApply(ignored -> result);
+    }
+
+    @VisibleForTesting
+    static List<List<Integer>> chunks(List<IndexKey> keys, int chunkSize) {
+        List<Integer> positions = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) positions.add(i);
+        if (chunkSize <= 0 || keys.size() <= chunkSize) return ImmutableList.of(positions);
+
+        positions.sort(Comparator.comparing((Integer p) -> keys.get(p).index)
+           .thenComparing(p -> nullToEmpty(keys.get(p).parent)));
+        return Lists.partition(positions, chunkSize);
+    }
+
+    private static MultiGetRequest multiGetRequest(Iterable<IndexKey> keys) {
         MultiGetRequest multiGetRequest = new MultiGetRequest();
-        for (IndexKey key : indexKeys) {
-            if (isNullOrEmpty(key.id)) continue;
+        for (IndexKey key : keys) {
             multiGetRequest.add(new MultiGetRequest.Item(key.index, key.type, key.id).parent(key.parent)
                .fields(SOURCE_META, PARENT_META));
         }
-        if (multiGetRequest.getItems().size() == 0) return result.build();
-
-        MultiGetResponse multiGetItemResponses = client.multiGet(multiGetRequest).actionGet();
-        for (MultiGetItemResponse item : multiGetItemResponses.getResponses()) {
-            GetResponse get = checkMultiGet(item).getResponse();
-            if (!get.isExists()) {
-                if (ignoreFailure) continue;
-                throw new IllegalStateException("get item not exists");
+        return multiGetRequest;
+    }
+
+    private static void collect(MultiGetResponse response, List<Integer> positions, GetResponse[] result) {
+        MultiGetItemResponse[] items = response.getResponses();
+        for (int i = 0; i < items.length; i++) result[positions.get(i)] = checkMultiGet(items[i]).getResponse();
+    }
+
+    private static final class Lookup {
+        final List<GetResponse> responses = new ArrayList<>();
+        final List<IndexKey> misses = new ArrayList<>();
+        final List<Integer> positions = new ArrayList<>();
+
+        Lookup(DocCache cache, Iterable<IndexKey> indexKeys) {
+            for (IndexKey key : indexKeys) {
+                if (isNullOrEmpty(key.id)) continue;
+                GetResponse cached = cache == null ? null : cache.get(key);
+                if (cached == null) {
+                    misses.add(key);
+                    positions.add(responses.size());
+                }
+                responses.add(cached);
+            }
+        }
+
+        <T> List<T> build(DocCache cache, GetResponse[] fetched, ResultBuilder<T> resultBuilder, boolean ignoreFailure) {
+            for (int i = 0; i < fetched.length; i++) {
+                GetResponse get = fetched[i];
+                if (!get.isExists()) {
+                    if (ignoreFailure) continue;
+                    throw new IllegalStateException("get item not exists");
+                }
+                if (cache != null) cache.put(misses.get(i), get);
+                responses.set(positions.get(i), get);
+            }
+
+            ImmutableList.Builder<T> result = ImmutableList.builder();
+            for (GetResponse get : responses) {
+                if (get != null) result.add(resultBuilder.buildFrom(get));
             }
-            result.add(resultBuilder.buildFrom(get));
+            return result.build();
         }
-        return result.build();
     }
 }
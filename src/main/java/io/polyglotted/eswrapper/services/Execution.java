@@ -0,0 +1,133 @@
+package io.polyglotted.eswrapper.services;
+
+import io.polyglotted.pgmodel.search.IndexKey;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.SneakyThrows;
+import lombok.experimental.Accessors;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.DocumentRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+public final class Execution {
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+    private final Executor executor;
+    private final int perIndexLimit;
+    private final ConcurrentMap<String, Semaphore> permits = new ConcurrentHashMap<>();
+
+    private Execution(Executor executor, int perIndexLimit) {
+        this.executor = checkNotNull(executor, "executor cannot be null");
+        this.perIndexLimit = perIndexLimit;
+    }
+
+    public static Builder executionBuilder(Executor executor) { return new Builder(executor); }
+
+    public static String currentOperation() { return CURRENT.get(); }
+
+    public int availablePermits(String index) {
+        Semaphore semaphore = permits.get(index);
+        return semaphore == null ? perIndexLimit : semaphore.availablePermits();
+    }
+
+    public <T> CompletableFuture<T> submit(String operation, String[] indices, Supplier<T> call) {
+        if (CURRENT.get() != null) return CompletableFuture.supplyAsync(call, Runnable::run);
+        return CompletableFuture.supplyAsync(() -> run(operation, indices, call), executor);
+    }
+
+    //nested calls already hold their permits and may be on an executor thread, so they run inline
+    public <T> T call(String operation, String[] indices, Supplier<T> call) {
+        if (CURRENT.get() != null) return call.get();
+        try {
+            return submit(operation, indices, call).join();
+        } catch (CompletionException ex) {
+            throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() :
+               new IllegalStateException(ex.getCause());
+        }
+    }
+
+    @SneakyThrows(InterruptedException.class)
+    private <T> T run(String operation, String[] indices, Supplier<T> call) {
+        Semaphore[] held = perIndexLimit > 0 ? acquire(indices) : new Semaphore[0];
+        Thread thread = Thread.currentThread();
+        String name = thread.getName();
+        String tag = "es:" + operation + Arrays.toString(indices);
+        String previous = CURRENT.get();
+        thread.setName(name + " [" + tag + "]");
+        CURRENT.set(tag);
+        try {
+            return call.get();
+        } finally {
+            if (previous == null) CURRENT.remove();
+            else CURRENT.set(previous);
+            thread.setName(name);
+            for (Semaphore semaphore : held) semaphore.release();
+        }
+    }
+
+    static String[] indicesOf(BulkRequest bulkRequest) {
+        Set<String> indices = new TreeSet<>();
+        for (ActionRequest request : bulkRequest.requests()) {
+            if (request instanceof DocumentRequest) indices.add(((DocumentRequest<?>) request).index());
+        }
+        return indices.toArray(new String[indices.size()]);
+    }
+
+    static String typesOf(BulkRequest bulkRequest) {
+        Set<String> types = new TreeSet<>();
+        for (ActionRequest request : bulkRequest.requests()) {
+            if (request instanceof DocumentRequest) types.add(((DocumentRequest<?>) request).type());
+        }
+        return types.isEmpty() ? null : String.join(",", types);
+    }
+
+    static String[] indicesOf(Iterable<IndexKey> keys) {
+        Set<String> indices = new TreeSet<>();
+        for (IndexKey key : keys) indices.add(key.index);
+        return indices.toArray(new String[indices.size()]);
+    }
+
+    private Semaphore[] acquire(String[] indices) throws InterruptedException {
+        TreeSet<String> sorted = new TreeSet<>(Arrays.asList(indices));
+        Semaphore[] held = new Semaphore[sorted.size()];
+        int count = 0;
+        try {
+            for (String index : sorted) {
+                Semaphore semaphore = permits.computeIfAbsent(index, i -> new Semaphore(perIndexLimit, true));
+                semaphore.acquire();
+                held[count++] = semaphore;
+            }
+            return held;
+        } catch (InterruptedException ex) {
+            for (int i = 0; i < count; i++) held[i].release();
+            throw ex;
+        }
+    }
+
+    @Setter
+    @Accessors(fluent = true, chain = true)
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class Builder {
+        private final Executor executor;
+        private int perIndexLimit = 0;
+
+        public Execution build() {
+            checkArgument(perIndexLimit >= 0, "perIndexLimit cannot be negative");
+            return new Execution(executor, perIndexLimit);
+        }
+    }
+}
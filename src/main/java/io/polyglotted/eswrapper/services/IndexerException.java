@@ -15,10 +15,12 @@ public class IndexerException extends RuntimeException {
     }
 
     public static <K, V> void checkErrors(Map<K, V> errorsMap) {
-        if (!errorsMap.isEmpty()) {
-            throw new IndexerException(ImmutableMap.of("ERROR_MESSAGE",
-               buildFailureMessage("indexing failed:", errorsMap), "ERRORS", errorsMap));
-        }
+        if (!errorsMap.isEmpty()) throw indexingFailed(errorsMap);
+    }
+
+    static <K, V> IndexerException indexingFailed(Map<K, V> errorsMap) {
+        return new IndexerException(ImmutableMap.of("ERROR_MESSAGE",
+           buildFailureMessage("indexing failed:", errorsMap), "ERRORS", errorsMap));
     }
 
     static <K, V> String buildFailureMessage(String message, Map<K, V>  errorsMap) {
@@ -5,10 +5,14 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import io.polyglotted.eswrapper.indexing.Bundling;
 import io.polyglotted.eswrapper.indexing.IgnoreErrors;
+import io.polyglotted.eswrapper.indexing.IndexRecord;
 import io.polyglotted.eswrapper.indexing.Indexable;
+import io.polyglotted.eswrapper.metrics.OperationMetrics;
+import io.polyglotted.eswrapper.services.LockService.Lease;
 import io.polyglotted.pgmodel.search.IndexKey;
 import io.polyglotted.pgmodel.search.SimpleDoc;
 import lombok.RequiredArgsConstructor;
+import lombok.experimental.Wither;
 import lombok.extern.slf4j.Slf4j;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.bulk.BulkItemResponse;
@@ -19,35 +23,69 @@ import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.index.VersionType;
 import org.elasticsearch.index.engine.DocumentAlreadyExistsException;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.Iterables.transform;
+import static com.google.common.collect.Maps.toMap;
 import static io.polyglotted.eswrapper.indexing.IgnoreErrors.lenient;
 import static io.polyglotted.eswrapper.indexing.IgnoreErrors.strict;
+import static io.polyglotted.eswrapper.indexing.Indexable.indexableBuilder;
+import static io.polyglotted.eswrapper.metrics.OperationMetrics.NONE;
 import static io.polyglotted.eswrapper.query.ResultBuilder.SimpleDocBuilder;
+import static io.polyglotted.eswrapper.services.BulkPipeline.pipelineBuilder;
 import static io.polyglotted.eswrapper.services.DocFinder.findAllBy;
+import static io.polyglotted.eswrapper.services.Execution.indicesOf;
+import static io.polyglotted.eswrapper.services.Execution.typesOf;
 import static io.polyglotted.eswrapper.services.IndexerException.checkErrors;
+import static io.polyglotted.eswrapper.services.IndexerException.indexingFailed;
+import static io.polyglotted.eswrapper.services.Metered.metered;
+import static io.polyglotted.eswrapper.services.Metered.meteredAsync;
 import static io.polyglotted.eswrapper.services.ModelIndexUtil.indexKeyOf;
 import static io.polyglotted.eswrapper.services.ModelIndexUtil.resultKeys;
+import static io.polyglotted.eswrapper.services.RefreshPolicy.immediate;
+import static io.polyglotted.eswrapper.services.RetryPolicy.noRetry;
 import static io.polyglotted.eswrapper.services.VersionValidator.STANDARD_VALIDATOR;
-import static org.elasticsearch.client.Requests.refreshRequest;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 
 @Slf4j
 @RequiredArgsConstructor
 public final class IndexerWrapper {
     private final Client client;
+    @Wither private final RefreshPolicy refreshPolicy;
+    @Wither private final AdaptiveBatcher adaptiveBatcher;
+    @Wither private final RetryPolicy retryPolicy;
+    @Wither private final LockService lockService;
+    @Wither private final DocCache docCache;
+    @Wither private final Execution execution;
+    @Wither private final OperationMetrics metrics;
+
+    public IndexerWrapper(Client client) {
+        this(client, immediate(), null, noRetry(), null, null, null, NONE);
+    }
 
     public void index(ActionRequest<?> request) {
-        if (request instanceof IndexRequest)
-            client.index((IndexRequest) request).actionGet();
-        else if (request instanceof UpdateRequest)
-            client.update((UpdateRequest) request).actionGet();
-        else if (request instanceof DeleteRequest)
-            client.delete((DeleteRequest) request).actionGet();
+        try {
+            if (request instanceof IndexRequest)
+                client.index((IndexRequest) request).actionGet();
+            else if (request instanceof UpdateRequest)
+                client.update((UpdateRequest) request).actionGet();
+            else if (request instanceof DeleteRequest)
+                client.delete((DeleteRequest) request).actionGet();
+        } finally {
+            if (docCache != null) docCache.invalidate(ImmutableList.of(request));
+        }
     }
 
     public BulkResponse index(BulkRequest bulkRequest) { return index(bulkRequest, strict()); }
@@ -55,41 +93,221 @@ public final class IndexerWrapper {
     public List<IndexKey> bulkIndex(Bundling bundling) { return bulkIndex(bundling, strict()); }
 
     public List<IndexKey> bulkIndex(Bundling bundling, IgnoreErrors ignoreErrors) {
+        BulkResponse bulkResponse = null;
         try {
-            BulkResponse bulkResponse = index(bundling.writeRequest(), ignoreErrors);
+            bulkResponse = index(bundling.writeRequest(), ignoreErrors);
             return resultKeys(bulkResponse, bundling.keys());
 
         } finally {
-            forceRefresh(bundling.indices());
+            refreshPolicy.refresh(client, bundling.indices(), bulkResponse);
         }
     }
 
+    public CompletableFuture<List<IndexKey>> bulkIndexAsync(Bundling bundling) {
+        return bulkIndexAsync(bundling, strict());
+    }
+
+    public CompletableFuture<List<IndexKey>> bulkIndexAsync(Bundling bundling, IgnoreErrors ignoreErrors) {
+        CompletableFuture<BulkResponse> indexed = indexAsync(bundling.writeRequest());
+        return indexed.handle((response, failure) -> refreshPolicy.refreshAsync(client, bundling.indices(), response))
+           .thenCompose(refreshed -> refreshed).thenCompose(refreshed -> indexed).thenApply(response -> {
+               if (response == null) return ImmutableList.of();
+               checkResponse(response, ignoreErrors);
+               return resultKeys(response, bundling.keys());
+           });
+    }
+
+    public CompletableFuture<BulkResponse> indexAsync(BulkRequest bulkRequest) {
+        if (bulkRequest.numberOfActions() <= 0) return completedFuture(null);
+        if (execution != null) return execution.submit("bulk", indicesOf(bulkRequest),
+           () -> retryPolicy.execute(bulkRequest, this::executeBulk));
+        return retryPolicy.executeAsync(bulkRequest, this::executeBulkAsync);
+    }
+
+    public BulkPipeline.Builder bulkPipeline() { return pipelineBuilder(client).sender(this::indexAsync); }
+
     public List<IndexKey> twoPhaseCommit(Indexable indexable) { return twoPhaseCommit(indexable, STANDARD_VALIDATOR); }
 
     public List<IndexKey> twoPhaseCommit(Indexable indexable, VersionValidator validator) {
-        lockTheIndexOrFail(indexable.unaryIndex);
+        String[] indices = {indexable.unaryIndex};
+        Lease lease = lock(indexable);
+        BulkResponse archiveResponse = null;
+        BulkResponse bulkResponse = null;
         try {
-            List<SimpleDoc> currentDocs = findAllBy(client, indexable.keys(), SimpleDocBuilder, true);
+            List<SimpleDoc> currentDocs = metered(metrics, execution, "commit-read", indices, null, 0,
+               () -> findAllBy(client, indexable.keys(), SimpleDocBuilder, true));
             BulkRequest updateRequest = validator.validate(indexable, currentDocs);
             try {
-                index(updateRequest);
-                BulkResponse bulkResponse = index(indexable.writeRequest());
+                //renewed right before each phase, a lease taken over in between refuses the write
+                lease = renew(lease);
+                archiveResponse = index("commit-archive", updateRequest, strict());
+                lease = renew(lease);
+                bulkResponse = index("commit-write", indexable.writeRequest(), strict());
                 return resultKeys(bulkResponse, indexable.keys());
 
             } catch (RuntimeException ex) {
+                bulkResponse = null;
                 logError(ex);
-                deleteUpdatesInHistory(indexable.unaryIndex, indexable.keys());
-                forceReindex(currentDocs);
+                if (lease == null || lockService.holds(client, lease)) {
+                    deleteUpdatesInHistory(indexable.unaryIndex, indexable.keys());
+                    forceReindex(currentDocs);
+                } else {
+                    log.warn("lost the lease on " + indexable.unaryIndex + ", leaving the docs to the new owner");
+                    deleteCreated(archiveResponse);
+                }
                 throw ex;
             }
         } finally {
-            unlockIndex(indexable.unaryIndex);
-            forceRefresh(indexable.unaryIndex);
+            unlock(indexable, lease);
+            refreshPolicy.refresh(client, indices, archiveResponse == null ?
+               new BulkResponse[]{bulkResponse} : new BulkResponse[]{archiveResponse, bulkResponse});
+        }
+    }
+
+    private Lease lock(Indexable indexable) {
+        if (lockService == null) {
+            lockTheIndexOrFail(indexable.unaryIndex);
+            return null;
+        }
+        return metered(metrics, null, "lock-acquire", new String[]{indexable.unaryIndex}, null, 0,
+           () -> lockService.acquire(client, indexable.unaryIndex, indexable.keys()));
+    }
+
+    private Lease renew(Lease lease) { return lease == null ? null : lockService.renew(client, lease); }
+
+    private void unlock(Indexable indexable, Lease lease) {
+        if (lease == null) unlockIndex(indexable.unaryIndex);
+        else lockService.release(client, lease);
+    }
+
+    //archive docs are created once per version, so the ones this commit created are still its own to remove
+    private void deleteCreated(BulkResponse archiveResponse) {
+        if (archiveResponse == null) return;
+        BulkRequest deleteRequest = new BulkRequest().refresh(false);
+        for (BulkItemResponse item : archiveResponse) {
+            if (!item.isFailed()) deleteRequest.add(new DeleteRequest(item.getIndex(), item.getType(), item.getId()));
         }
+        index(deleteRequest, lenient());
+    }
+
+    public List<IndexKey> optimisticCommit(Indexable indexable) {
+        return optimisticCommit(indexable, STANDARD_VALIDATOR, 3);
     }
 
-    private void forceRefresh(String... indices) {
-        client.admin().indices().refresh(refreshRequest(indices)).actionGet();
+    public List<IndexKey> optimisticCommit(Indexable indexable, VersionValidator validator, int maxAttempts) {
+        Map<String, SimpleDoc> currentDocs = new LinkedHashMap<>();
+        for (SimpleDoc doc : findAllBy(client, indexable.keys(), SimpleDocBuilder, true))
+            currentDocs.put(doc.uniqueId(), doc);
+        BulkRequest archiveRequest = validator.validate(indexable, ImmutableList.copyOf(currentDocs.values()));
+
+        List<IndexRecord> records = new ArrayList<>(indexable.records);
+        List<SimpleDoc> ownedDocs = new ArrayList<>();
+        List<BulkResponse> responses = new ArrayList<>();
+        BulkResponse bulkResponse = null;
+        try {
+            for (int attempt = 1; archiveRequest.numberOfActions() > 0; attempt++) {
+                BulkResponse archiveResponse = retryPolicy.execute(archiveRequest,
+                   request -> executeBulk("commit-archive", request));
+                responses.add(archiveResponse);
+                List<IndexRecord> conflicts = archiveConflicts(records, archiveResponse, currentDocs, ownedDocs);
+                if (conflicts.isEmpty()) break;
+                if (attempt >= maxAttempts) throw indexingFailed(toMap(transform(conflicts, IndexRecord::key),
+                   key -> "version conflict for update"));
+
+                //another commit moved these docs on, so they are re-validated on top of the version it left behind
+                log.info("retrying " + conflicts.size() + " conflicting records on " + indexable.unaryIndex);
+                List<SimpleDoc> freshDocs = findAllBy(client, transform(conflicts, IndexRecord::key),
+                   SimpleDocBuilder, true);
+                Map<String, SimpleDoc> fresh = new HashMap<>();
+                for (SimpleDoc doc : freshDocs) {
+                    currentDocs.put(doc.uniqueId(), doc);
+                    fresh.put(doc.baseIndexId(), doc);
+                }
+                List<IndexRecord> retried = new ArrayList<>();
+                for (IndexRecord record : conflicts) {
+                    SimpleDoc doc = fresh.get(record.baseIndexId());
+                    IndexRecord retry = doc == null ? record : record.rebase(doc.version());
+                    records.set(records.indexOf(record), retry);
+                    retried.add(retry);
+                }
+                archiveRequest = validator.validate(indexableBuilder().records(retried).timestamp(indexable.timestamp)
+                   .user(indexable.user).build(), freshDocs);
+            }
+            Indexable committed = indexableBuilder().records(records).timestamp(indexable.timestamp)
+               .user(indexable.user).build();
+            bulkResponse = retryPolicy.execute(preconditioned(committed, currentDocs.values()),
+               request -> executeBulk("commit-write", request));
+            responses.add(bulkResponse);
+            checkResponse(bulkResponse, strict());
+            return resultKeys(bulkResponse, committed.keys());
+
+        } catch (RuntimeException ex) {
+            logError(ex);
+            rollbackOptimistic(ownedDocs, bulkResponse);
+            responses.clear();
+            responses.add(null);
+            throw ex;
+
+        } finally {
+            refreshPolicy.refresh(client, new String[]{indexable.unaryIndex},
+               responses.toArray(new BulkResponse[responses.size()]));
+        }
+    }
+
+    //docs that existed must still be at the version seen, new docs must still be absent
+    private static BulkRequest preconditioned(Indexable indexable, Collection<SimpleDoc> currentDocs) {
+        Set<String> existing = new HashSet<>(transform(currentDocs, SimpleDoc::baseIndexId));
+        BulkRequest request = indexable.writeRequest();
+        for (int i = 0; i < indexable.records.size(); i++) {
+            ActionRequest<?> write = request.requests().get(i);
+            boolean exists = existing.contains(indexable.records.get(i).baseIndexId());
+            if (write instanceof IndexRequest) {
+                IndexRequest indexRequest = (IndexRequest) write;
+                if (!exists) indexRequest.create(true);
+                indexRequest.versionType(VersionType.EXTERNAL).version(indexable.timestamp);
+            } else if (write instanceof DeleteRequest && exists) {
+                ((DeleteRequest) write).versionType(VersionType.EXTERNAL).version(indexable.timestamp);
+            }
+        }
+        return request;
+    }
+
+    private static List<IndexRecord> archiveConflicts(List<IndexRecord> records, BulkResponse archiveResponse,
+                                                      Map<String, SimpleDoc> currentDocs, List<SimpleDoc> ownedDocs) {
+        Map<String, IndexRecord> recordsById = new HashMap<>();
+        for (IndexRecord record : records) recordsById.put(record.baseIndexId(), record);
+        ImmutableMap.Builder<IndexKey, String> errors = ImmutableMap.builder();
+        List<IndexRecord> conflicts = new ArrayList<>();
+        for (BulkItemResponse item : archiveResponse) {
+            SimpleDoc doc = currentDocs.get(item.getId());
+            if (!item.isFailed()) {
+                ownedDocs.add(doc);
+            } else if (doc != null && lenient().ignoreFailure(item.getFailureMessage())) {
+                conflicts.add(recordsById.get(doc.baseIndexId()));
+            } else {
+                errors.put(indexKeyOf(item, null), item.getFailureMessage());
+            }
+        }
+        checkErrors(errors.build());
+        return conflicts;
+    }
+
+    private void rollbackOptimistic(List<SimpleDoc> ownedDocs, BulkResponse bulkResponse) {
+        BulkRequest deleteRequest = new BulkRequest().refresh(false);
+        Set<String> ownedIds = new HashSet<>();
+        for (SimpleDoc doc : ownedDocs) {
+            ownedIds.add(doc.baseIndexId());
+            deleteRequest.add(new DeleteRequest(doc.index(), doc.type(), doc.uniqueId()));
+        }
+        if (bulkResponse != null) {
+            for (BulkItemResponse item : bulkResponse) {
+                if (item.isFailed() || "delete".equals(item.getOpType())) continue;
+                IndexKey key = indexKeyOf(item, null);
+                if (!ownedIds.contains(key.baseIndexId())) deleteRequest.add(new DeleteRequest(key.index, key.type, key.id));
+            }
+        }
+        index(deleteRequest, lenient());
+        forceReindex(ownedDocs);
     }
 
     @VisibleForTesting
@@ -103,29 +321,66 @@ public final class IndexerWrapper {
            indexKey -> new DeleteRequest(historyIndex, indexKey.type, indexKey.id))), lenient());
     }
 
-    @VisibleForTesting
-    void lockTheIndexOrFail(String index) {
+    //with a LockService the index lock also excludes the per-key leases of twoPhaseCommit
+    public void lockTheIndexOrFail(String index) {
         try {
+            if (lockService != null) {
+                lockService.lockIndex(client, index);
+                return;
+            }
             IndexResponse response = client.index(new IndexRequest(index, "$lock", "global")
                .create(true).source(ImmutableMap.of())).actionGet();
             checkState(response.isCreated(), "unable to lock the index " + index);
-        } catch (DocumentAlreadyExistsException dex) {
+        } catch (DocumentAlreadyExistsException | IllegalStateException ex) {
             throw new IllegalStateException("unable to lock the index " + index);
         }
     }
 
-    @VisibleForTesting
-    void unlockIndex(String index) {
-        client.delete(new DeleteRequest(index, "$lock", "global")).actionGet();
+    public void unlockIndex(String index) {
+        if (lockService != null) lockService.unlockIndex(client, index);
+        else client.delete(new DeleteRequest(index, "$lock", "global")).actionGet();
     }
 
     public BulkResponse index(BulkRequest bulkRequest, IgnoreErrors ignoreErrors) {
+        return index("bulk", bulkRequest, ignoreErrors);
+    }
+
+    private BulkResponse index(String operation, BulkRequest bulkRequest, IgnoreErrors ignoreErrors) {
         if (bulkRequest.numberOfActions() <= 0) return null;
-        BulkResponse responses = client.bulk(bulkRequest).actionGet();
+        BulkResponse responses = retryPolicy.execute(bulkRequest, request -> executeBulk(operation, request));
         checkResponse(responses, ignoreErrors);
         return responses;
     }
 
+    private BulkResponse executeBulk(BulkRequest bulkRequest) { return executeBulk("bulk", bulkRequest); }
+
+    private BulkResponse executeBulk(String operation, BulkRequest bulkRequest) {
+        try {
+            return metered(metrics, execution, operation, indicesOf(bulkRequest), typesOf(bulkRequest),
+               bulkRequest.estimatedSizeInBytes(), () -> sendBulk(bulkRequest));
+        } finally {
+            if (docCache != null) docCache.invalidate(bulkRequest.requests());
+        }
+    }
+
+    private BulkResponse sendBulk(BulkRequest bulkRequest) {
+        return adaptiveBatcher == null ? client.bulk(bulkRequest).actionGet() : adaptiveBatcher.bulk(client, bulkRequest);
+    }
+
+    private CompletableFuture<BulkResponse> executeBulkAsync(BulkRequest bulkRequest) {
+        return meteredAsync(metrics, "bulk", indicesOf(bulkRequest), typesOf(bulkRequest),
+           bulkRequest.estimatedSizeInBytes(), () -> sendBulkAsync(bulkRequest)).whenComplete((response, failure) -> {
+            if (docCache != null) docCache.invalidate(bulkRequest.requests());
+        });
+    }
+
+    private CompletableFuture<BulkResponse> sendBulkAsync(BulkRequest bulkRequest) {
+        if (adaptiveBatcher != null) return adaptiveBatcher.bulkAsync(client, bulkRequest);
+        ListenerFuture<BulkResponse> future = new ListenerFuture<>();
+        client.bulk(bulkRequest, future);
+        return future;
+    }
+
     @VisibleForTesting
     static void logError(RuntimeException ex) {
         if (ex instanceof IndexerException) log.error(ex.getMessage());
@@ -151,6 +406,10 @@ public final class IndexerWrapper {
         return indexResponse.getVersion();
     }
 
+    public SequenceAllocator sequenceAllocator(IndexKey key, int blockSize) {
+        return new SequenceAllocator(client, key, blockSize, 0.25);
+    }
+
     public List<Long> generateSequences(IndexKey key, int blocks) {
         BulkRequest request = new BulkRequest().refresh(true);
         for (int i = 0; i < blocks; i++)
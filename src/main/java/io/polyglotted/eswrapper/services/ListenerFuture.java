@@ -0,0 +1,14 @@
+package io.polyglotted.eswrapper.services;
+
+import org.elasticsearch.action.ActionListener;
+
+import java.util.concurrent.CompletableFuture;
+
+final class ListenerFuture<T> extends CompletableFuture<T> implements ActionListener<T> {
+
+    @Override
+    public void onResponse(T response) { complete(response); }
+
+    @Override
+    public void onFailure(Throwable failure) { completeExceptionally(failure); }
+}
@@ -0,0 +1,226 @@
+package io.polyglotted.eswrapper.services;
+
+import com.google.common.collect.ImmutableMap;
+import io.polyglotted.pgmodel.search.IndexKey;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+import lombok.experimental.Wither;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.index.query.QueryBuilder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static java.util.Collections.singleton;
+import static java.util.UUID.randomUUID;
+import static org.elasticsearch.client.Requests.refreshRequest;
+import static org.elasticsearch.index.query.FilterBuilders.rangeFilter;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.filteredQuery;
+import static org.elasticsearch.index.query.QueryBuilders.idsQuery;
+import static org.elasticsearch.index.query.QueryBuilders.prefixQuery;
+
+@Slf4j
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public final class LockService {
+    public static final String DEFAULT_LOCK_INDEX = "eswrapper-locks";
+    static final String LOCK_TYPE = "$lock";
+    private static final String INDEX_LOCK = "index";
+    private static final String OWNER_FIELD = "owner";
+    private static final String EXPIRES_FIELD = "expiresAt";
+    private static final String UID_FIELD = "_uid";
+    private static final Map<String, Object> RELEASED = ImmutableMap.of(OWNER_FIELD, "", EXPIRES_FIELD, 0L);
+    @Wither public final String lockIndex;
+    public final long leaseMillis;
+    public final int stripes;
+
+    public static LockService keyLocks(long leaseMillis) { return stripedLocks(leaseMillis, 0); }
+
+    public static LockService stripedLocks(long leaseMillis, int stripes) {
+        checkArgument(leaseMillis > 0, "lease must be positive");
+        checkArgument(stripes >= 0, "stripes cannot be negative");
+        return new LockService(DEFAULT_LOCK_INDEX, leaseMillis, stripes);
+    }
+
+    //each side writes its own lock before looking for the other, so a key lease and an index lock never both succeed
+    public Lease acquire(Client client, String index, Iterable<IndexKey> keys) {
+        Lease lease = acquireIds(client, index, lockIds(index, keys));
+        if (!lease.versions.isEmpty() && isLive(client, indexLockId(index))) {
+            release(client, lease);
+            throw new IllegalStateException("unable to lock " + lease.versions.keySet() + " in locked index " + index);
+        }
+        return lease;
+    }
+
+    public Lease lockIndex(Client client, String index) {
+        Lease lease = acquireIds(client, index, singleton(indexLockId(index)));
+        long liveKeys = liveKeyLocks(client, index);
+        if (liveKeys > 0) {
+            release(client, lease);
+            throw new IllegalStateException("unable to lock " + index + " with " + liveKeys + " key locks held");
+        }
+        return lease;
+    }
+
+    public void unlockIndex(Client client, String index) {
+        client.index(new IndexRequest(lockIndex, LOCK_TYPE, indexLockId(index)).source(RELEASED)).actionGet();
+    }
+
+    public boolean holds(Client client, Lease lease) {
+        if (lease.versions.isEmpty()) return true;
+        for (MultiGetItemResponse item : client.prepareMultiGet().add(lockIndex, LOCK_TYPE, lease.versions.keySet())
+           .execute().actionGet()) {
+            GetResponse response = item.getResponse();
+            if (item.isFailed() || !response.isExists() || response.getVersion() != lease.versions.get(item.getId()))
+                return false;
+        }
+        return true;
+    }
+
+    public Lease renew(Client client, Lease lease) {
+        if (lease.versions.isEmpty()) return lease;
+        long expiresAt = System.currentTimeMillis() + leaseMillis;
+        BulkRequest renewRequest = new BulkRequest().refresh(false);
+        for (Map.Entry<String, Long> entry : lease.versions.entrySet()) renewRequest.add(new IndexRequest(lockIndex,
+           LOCK_TYPE, entry.getKey()).version(entry.getValue()).source(lockSource(lease.owner, expiresAt)));
+
+        Map<String, Long> renewed = new LinkedHashMap<>();
+        List<String> lost = new ArrayList<>();
+        for (BulkItemResponse item : client.bulk(renewRequest).actionGet()) {
+            if (item.isFailed()) lost.add(item.getId());
+            else renewed.put(item.getId(), item.getVersion());
+        }
+        Lease result = new Lease(lease.index, lease.owner, expiresAt, ImmutableMap.copyOf(renewed));
+        if (!lost.isEmpty()) {
+            release(client, result);
+            throw new IllegalStateException("lost lock " + lost + " in " + lease.index);
+        }
+        return result;
+    }
+
+    public void release(Client client, Lease lease) {
+        if (lease.versions.isEmpty()) return;
+        BulkRequest releaseRequest = new BulkRequest().refresh(false);
+        for (Map.Entry<String, Long> entry : lease.versions.entrySet())
+            releaseRequest.add(new IndexRequest(lockIndex, LOCK_TYPE, entry.getKey()).version(entry.getValue())
+               .source(RELEASED));
+
+        for (BulkItemResponse item : client.bulk(releaseRequest).actionGet()) {
+            if (item.isFailed()) log.warn("unable to release lock " + item.getId() + ": " + item.getFailureMessage());
+        }
+    }
+
+    private Lease acquireIds(Client client, String index, Set<String> lockIds) {
+        String owner = randomUUID().toString();
+        long expiresAt = System.currentTimeMillis() + leaseMillis;
+        Map<String, Object> source = lockSource(owner, expiresAt);
+
+        Map<String, Long> acquired = new LinkedHashMap<>();
+        List<String> contended = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        if (!lockIds.isEmpty()) {
+            BulkRequest createRequest = new BulkRequest().refresh(false);
+            for (String id : lockIds) createRequest.add(new IndexRequest(lockIndex, LOCK_TYPE, id).create(true)
+               .source(source));
+            for (BulkItemResponse item : client.bulk(createRequest).actionGet()) {
+                if (!item.isFailed()) acquired.put(item.getId(), item.getVersion());
+                else if (item.getFailureMessage().startsWith("DocumentAlreadyExistsException")) contended.add(item.getId());
+                else failed.add(item.getId());
+            }
+        }
+        if (failed.isEmpty() && !contended.isEmpty()) takeOverFree(client, contended, source, acquired, failed);
+
+        Lease lease = new Lease(index, owner, expiresAt, ImmutableMap.copyOf(acquired));
+        if (!failed.isEmpty()) {
+            release(client, lease);
+            throw new IllegalStateException("unable to lock " + failed + " in " + index);
+        }
+        return lease;
+    }
+
+    private void takeOverFree(Client client, List<String> contended, Map<String, Object> source,
+                              Map<String, Long> acquired, List<String> failed) {
+        long now = System.currentTimeMillis();
+        BulkRequest takeOverRequest = new BulkRequest().refresh(false);
+        for (MultiGetItemResponse item : client.prepareMultiGet().add(lockIndex, LOCK_TYPE, contended).execute()
+           .actionGet()) {
+            GetResponse response = item.getResponse();
+            if (item.isFailed() || response == null) {
+                failed.add(item.getId());
+            } else if (!response.isExists()) {
+                takeOverRequest.add(new IndexRequest(lockIndex, LOCK_TYPE, item.getId()).create(true).source(source));
+            } else if (expiresAt(response) < now) {
+                if (expiresAt(response) > 0) log.warn("taking over expired lock " + item.getId());
+                takeOverRequest.add(new IndexRequest(lockIndex, LOCK_TYPE, item.getId()).version(response.getVersion())
+                   .source(source));
+            } else {
+                failed.add(item.getId());
+            }
+        }
+        if (!failed.isEmpty() || takeOverRequest.numberOfActions() == 0) return;
+
+        for (BulkItemResponse item : client.bulk(takeOverRequest).actionGet()) {
+            if (item.isFailed()) failed.add(item.getId());
+            else acquired.put(item.getId(), item.getVersion());
+        }
+    }
+
+    private boolean isLive(Client client, String lockId) {
+        GetResponse response = client.prepareGet(lockIndex, LOCK_TYPE, lockId).execute().actionGet();
+        return response.isExists() && expiresAt(response) >= System.currentTimeMillis();
+    }
+
+    private long liveKeyLocks(Client client, String index) {
+        client.admin().indices().refresh(refreshRequest(lockIndex)).actionGet();
+        QueryBuilder keyLocks = boolQuery().must(prefixQuery(UID_FIELD, LOCK_TYPE + "#" + index + "/"))
+           .mustNot(idsQuery(LOCK_TYPE).ids(indexLockId(index)));
+        return client.prepareSearch(lockIndex).setTypes(LOCK_TYPE).setSize(0).setQuery(filteredQuery(keyLocks,
+           rangeFilter(EXPIRES_FIELD).gte(System.currentTimeMillis()))).execute().actionGet().getHits().getTotalHits();
+    }
+
+    private static String indexLockId(String index) { return index + "/" + INDEX_LOCK; }
+
+    private static Map<String, Object> lockSource(String owner, long expiresAt) {
+        return ImmutableMap.of(OWNER_FIELD, owner, EXPIRES_FIELD, expiresAt);
+    }
+
+    private static long expiresAt(GetResponse response) {
+        Object expiresAt = response.getSourceAsMap().get(EXPIRES_FIELD);
+        return expiresAt instanceof Number ? ((Number) expiresAt).longValue() : Long.MAX_VALUE;
+    }
+
+    Set<String> lockIds(String index, Iterable<IndexKey> keys) {
+        Set<String> lockIds = new TreeSet<>();
+        for (IndexKey key : keys) {
+            if (isNullOrEmpty(key.id)) continue;
+            String keyId = key.type + "/" + key.id;
+            lockIds.add(index + "/" + (stripes == 0 ? "key:" + keyId :
+               "stripe:" + ((keyId.hashCode() & Integer.MAX_VALUE) % stripes)));
+        }
+        return lockIds;
+    }
+
+    @ToString(doNotUseGetters = true)
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    public static final class Lease {
+        public final String index;
+        public final String owner;
+        public final long expiresAt;
+        public final ImmutableMap<String, Long> versions;
+
+        public boolean isExpired() { return System.currentTimeMillis() >= expiresAt; }
+    }
+}
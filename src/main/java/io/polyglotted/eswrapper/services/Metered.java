@@ -0,0 +1,61 @@
+package io.polyglotted.eswrapper.services;
+
+import io.polyglotted.eswrapper.metrics.OperationMetrics;
+import io.polyglotted.eswrapper.services.LockService.Lease;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.search.SearchResponse;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+import static io.polyglotted.eswrapper.metrics.OperationMetrics.NONE;
+
+abstract class Metered {
+
+    static <T> T metered(OperationMetrics metrics, Execution execution, String operation, String[] indices,
+                         String type, long requestBytes, Supplier<T> call) {
+        if (metrics == null || metrics == NONE) return execution == null ? call.get() : execution.call(operation, indices, call);
+
+        long start = System.nanoTime();
+        T result = null;
+        Throwable failure = null;
+        try {
+            result = execution == null ? call.get() : execution.call(operation, indices, call);
+            return result;
+        } catch (RuntimeException ex) {
+            failure = ex;
+            throw ex;
+        } finally {
+            metrics.record(operation, String.join(",", indices), type, System.nanoTime() - start, itemsOf(result),
+               requestBytes, 0, failure);
+        }
+    }
+
+    static <T> CompletableFuture<T> meteredAsync(OperationMetrics metrics, String operation, String[] indices,
+                                                 String type, long requestBytes, Supplier<CompletableFuture<T>> call) {
+        if (metrics == null || metrics == NONE) return call.get();
+
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException ex) {
+            metrics.record(operation, String.join(",", indices), type, System.nanoTime() - start, 0, requestBytes, 0, ex);
+            throw ex;
+        }
+        return future.whenComplete((result, failure) -> metrics.record(operation, String.join(",", indices), type,
+           System.nanoTime() - start, itemsOf(result), requestBytes, 0, failure instanceof CompletionException ?
+              failure.getCause() : failure));
+    }
+
+    private static int itemsOf(Object result) {
+        if (result == null) return 0;
+        if (result instanceof SearchResponse) return ((SearchResponse) result).getHits().getHits().length;
+        if (result instanceof BulkResponse) return ((BulkResponse) result).getItems().length;
+        if (result instanceof Collection) return ((Collection<?>) result).size();
+        if (result instanceof Lease) return ((Lease) result).versions.size();
+        return 1;
+    }
+}
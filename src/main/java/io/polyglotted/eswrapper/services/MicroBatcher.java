@@ -0,0 +1,69 @@
+package io.polyglotted.eswrapper.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static io.polyglotted.eswrapper.services.SharedScheduler.schedule;
+
+final class MicroBatcher<P> {
+    private final long windowMillis;
+    private final int maxBatch;
+    private final Consumer<List<P>> sender;
+    private final AtomicLong batches = new AtomicLong();
+    private List<P> batch = new ArrayList<>();
+
+    MicroBatcher(long windowMillis, int maxBatch, Consumer<List<P>> sender) {
+        checkArgument(windowMillis >= 0, "batching window cannot be negative");
+        checkArgument(maxBatch > 0, "maxBatch must be positive");
+        this.windowMillis = windowMillis;
+        this.maxBatch = maxBatch;
+        this.sender = sender;
+    }
+
+    long batches() { return batches.get(); }
+
+    void enqueue(P pending) {
+        List<P> ready = null;
+        boolean scheduleFlush;
+        synchronized (this) {
+            scheduleFlush = batch.isEmpty();
+            batch.add(pending);
+            if (batch.size() >= maxBatch || windowMillis == 0) {
+                ready = batch;
+                batch = new ArrayList<>();
+                scheduleFlush = false;
+            }
+        }
+        if (ready != null) send(ready);
+        else if (scheduleFlush) schedule(this::flush, windowMillis);
+    }
+
+    private void flush() {
+        List<P> ready;
+        synchronized (this) {
+            if (batch.isEmpty()) return;
+            ready = batch;
+            batch = new ArrayList<>();
+        }
+        send(ready);
+    }
+
+    private void send(List<P> ready) {
+        batches.incrementAndGet();
+        sender.accept(ready);
+    }
+
+    static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() :
+               new IllegalStateException(ex.getCause());
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package io.polyglotted.eswrapper.services;
+
+import com.google.common.collect.ImmutableList;
+import io.polyglotted.eswrapper.query.ResultBuilder;
+import io.polyglotted.pgmodel.search.query.Expression;
+import io.polyglotted.pgmodel.search.query.QueryResponse;
+import io.polyglotted.pgmodel.search.query.StandardQuery;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.index.query.FilterBuilder;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.polyglotted.eswrapper.services.MicroBatcher.await;
+import static io.polyglotted.eswrapper.services.QueryWrapper.queryResponse;
+
+@Slf4j
+public final class MultiSearch {
+    private final Client client;
+    private final MicroBatcher<Pending> batcher;
+    private final AtomicLong searches = new AtomicLong();
+
+    private MultiSearch(Client client, long windowMillis, int maxBatch) {
+        this.client = client;
+        this.batcher = new MicroBatcher<>(windowMillis, maxBatch, this::send);
+    }
+
+    public static MultiSearch searchBatcher(Client client, long windowMillis, int maxBatch) {
+        return new MultiSearch(client, windowMillis, maxBatch);
+    }
+
+    public static Item searchItem(StandardQuery query, ResultBuilder<?> resultBuilder) {
+        return searchItem(query, null, resultBuilder);
+    }
+
+    public static Item searchItem(StandardQuery query, FilterBuilder postFilter, ResultBuilder<?> resultBuilder) {
+        return new Item(query, postFilter, resultBuilder);
+    }
+
+    public long searches() { return searches.get(); }
+
+    public long requests() { return batcher.batches(); }
+
+    static List<Result> searchAll(Client client, List<SearchRequest> requests, List<Item> items) {
+        if (requests.isEmpty()) return ImmutableList.of();
+        MultiSearchRequest multiSearch = new MultiSearchRequest();
+        for (SearchRequest request : requests) multiSearch.add(request);
+
+        MultiSearchResponse.Item[] responses = client.multiSearch(multiSearch).actionGet().getResponses();
+        ImmutableList.Builder<Result> results = ImmutableList.builder();
+        for (int i = 0; i < responses.length; i++) {
+            results.add(resultOf(responses[i], items.get(i).resultBuilder, items.get(i).query.aggregates));
+        }
+        return results.build();
+    }
+
+    QueryResponse search(SearchRequest request, ResultBuilder<?> resultBuilder, List<Expression> aggregates) {
+        searches.incrementAndGet();
+        Pending pending = new Pending(request, resultBuilder, aggregates);
+        batcher.enqueue(pending);
+        return await(pending.future);
+    }
+
+    private void send(List<Pending> ready) {
+        MultiSearchRequest multiSearch = new MultiSearchRequest();
+        for (Pending pending : ready) multiSearch.add(pending.request);
+        ActionListener<MultiSearchResponse> listener = new ActionListener<MultiSearchResponse>() {
+            @Override
+            public void onResponse(MultiSearchResponse response) {
+                MultiSearchResponse.Item[] items = response.getResponses();
+                for (int i = 0; i < items.length; i++) {
+                    Pending pending = ready.get(i);
+                    Result result = resultOf(items[i], pending.resultBuilder, pending.aggregates);
+                    if (result.isFailed()) pending.future.completeExceptionally(new IllegalStateException(result.failure));
+                    else pending.future.complete(result.response);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable failure) {
+                log.warn("batched search of " + ready.size() + " queries failed: " + failure.getMessage());
+                for (Pending pending : ready) pending.future.completeExceptionally(failure);
+            }
+        };
+        try {
+            client.multiSearch(multiSearch, listener);
+        } catch (RuntimeException ex) {
+            listener.onFailure(ex);
+        }
+    }
+
+    private static Result resultOf(MultiSearchResponse.Item item, ResultBuilder<?> resultBuilder,
+                                   List<Expression> aggregates) {
+        if (item.isFailure()) return new Result(null, item.getFailureMessage());
+        try {
+            return new Result(queryResponse(item.getResponse(), resultBuilder, aggregates), null);
+        } catch (RuntimeException ex) {
+            return new Result(null, "unable to build response: " + ex.getMessage());
+        }
+    }
+
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    public static final class Item {
+        public final StandardQuery query;
+        public final FilterBuilder postFilter;
+        public final ResultBuilder<?> resultBuilder;
+    }
+
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    public static final class Result {
+        public final QueryResponse response;
+        public final String failure;
+
+        public boolean isFailed() { return failure != null; }
+    }
+
+    private static final class Pending {
+        final SearchRequest request;
+        final ResultBuilder<?> resultBuilder;
+        final List<Expression> aggregates;
+        final CompletableFuture<QueryResponse> future = new CompletableFuture<>();
+
+        Pending(SearchRequest request, ResultBuilder<?> resultBuilder, List<Expression> aggregates) {
+            this.request = request;
+            this.resultBuilder = resultBuilder;
+            this.aggregates = aggregates;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package io.polyglotted.eswrapper.services;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.polyglotted.eswrapper.query.ResultBuilder;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.unit.TimeValue;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.base.Throwables.propagate;
+
+@Slf4j
+public final class ParallelScroll<T> implements Iterator<T>, AutoCloseable {
+    private static final Object DONE = new Object();
+    private final BlockingQueue<Object> queue;
+    private final ExecutorService workers;
+    private int running;
+    private Object nextItem;
+    private volatile boolean closed = false;
+
+    ParallelScroll(Client client, SearchRequest request, ResultBuilder<T> resultBuilder,
+                   TimeValue keepAlive, int queueCapacity, int parallelism) {
+        checkArgument(queueCapacity > 0, "queue capacity must be positive");
+        checkArgument(parallelism > 0, "parallelism must be positive");
+        String preference = request.preference();
+        checkArgument(isNullOrEmpty(preference) || !preference.startsWith("_shards:"),
+           "parallel scroll cannot be combined with a shard preference");
+
+        int shards = numberOfShards(client, request.indices());
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.running = shards;
+        this.workers = Executors.newFixedThreadPool(Math.max(Math.min(shards, parallelism), 1),
+           new ThreadFactoryBuilder().setDaemon(true).setNameFormat("parallel-scroll-%d").build());
+
+        for (int shard = 0; shard < shards; shard++) {
+            SearchRequest shardRequest = new SearchRequest(request, request)
+               .preference(shardPreference(shard, preference));
+            workers.execute(() -> drain(client, shardRequest, resultBuilder, keepAlive));
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (nextItem == null) {
+            if (running == 0) {
+                close();
+                return false;
+            }
+            Object item = take();
+            if (item == DONE) {
+                running--;
+            } else if (item instanceof Failure) {
+                close();
+                throw propagate(((Failure) item).cause);
+            } else {
+                nextItem = item;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        T result = (T) nextItem;
+        nextItem = null;
+        return result;
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        workers.shutdownNow();
+        queue.clear();
+    }
+
+    private void drain(Client client, SearchRequest request, ResultBuilder<T> resultBuilder, TimeValue keepAlive) {
+        try (ScrollIterator<T> iterator = new ScrollIterator<>(client, request, resultBuilder, keepAlive, 1)) {
+            while (!closed && iterator.hasNext()) put(iterator.next());
+            put(DONE);
+        } catch (InterruptedException ie) {
+            log.debug("parallel scroll on " + request.preference() + " interrupted");
+        } catch (RuntimeException ex) {
+            try {
+                put(new Failure(ex));
+            } catch (InterruptedException ie) {
+                log.warn("parallel scroll on " + request.preference() + " failed: " + ex.getMessage());
+            }
+        }
+    }
+
+    private void put(Object item) throws InterruptedException {
+        if (!closed) queue.put(item);
+    }
+
+    @SneakyThrows(InterruptedException.class)
+    private Object take() { return queue.take(); }
+
+    static String shardPreference(int shard, String preference) {
+        return "_shards:" + shard + (isNullOrEmpty(preference) ? "" : ";" + preference);
+    }
+
+    static int numberOfShards(Client client, String... indices) {
+        MetaData metaData = client.admin().cluster().prepareState().setIndices(indices)
+           .execute().actionGet().getState().metaData();
+        Set<Integer> shardCounts = new TreeSet<>();
+        for (IndexMetaData indexMetaData : metaData) shardCounts.add(indexMetaData.numberOfShards());
+        checkArgument(shardCounts.size() <= 1, "parallel scroll requires indices with the same number of shards, found "
+           + shardCounts);
+        return shardCounts.isEmpty() ? 0 : shardCounts.iterator().next();
+    }
+
+    @RequiredArgsConstructor
+    private static final class Failure {
+        final Throwable cause;
+    }
+}
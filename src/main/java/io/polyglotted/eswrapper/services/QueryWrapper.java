@@ -2,12 +2,17 @@ package io.polyglotted.eswrapper.services;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import io.polyglotted.eswrapper.metrics.OperationMetrics;
 import io.polyglotted.eswrapper.query.AggsConverter;
+import io.polyglotted.eswrapper.query.ColumnarAggregation;
+import io.polyglotted.eswrapper.query.FilterCache;
+import io.polyglotted.eswrapper.query.PreparedQuery;
 import io.polyglotted.eswrapper.query.ResultBuilder;
 import io.polyglotted.pgmodel.search.IndexKey;
 import io.polyglotted.pgmodel.search.SimpleDoc;
 import io.polyglotted.pgmodel.search.query.*;
 import lombok.RequiredArgsConstructor;
+import lombok.experimental.Wither;
 import lombok.extern.slf4j.Slf4j;
 import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequestBuilder;
 import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
@@ -21,21 +26,32 @@ import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.FilterBuilder;
 import org.elasticsearch.search.aggregations.Aggregations;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import static com.google.common.collect.Maps.uniqueIndex;
+import static io.polyglotted.eswrapper.metrics.OperationMetrics.NONE;
 import static io.polyglotted.eswrapper.query.QueryBuilder.aggregationToRequest;
 import static io.polyglotted.eswrapper.query.QueryBuilder.filterToRequest;
 import static io.polyglotted.eswrapper.query.QueryBuilder.queryToRequest;
 import static io.polyglotted.eswrapper.query.QueryBuilder.scrollRequest;
 import static io.polyglotted.eswrapper.query.ResultBuilder.SimpleDocBuilder;
 import static io.polyglotted.eswrapper.services.DocFinder.findAllBy;
+import static io.polyglotted.eswrapper.services.Execution.indicesOf;
+import static io.polyglotted.eswrapper.services.Metered.metered;
+import static io.polyglotted.eswrapper.services.Metered.meteredAsync;
 import static io.polyglotted.eswrapper.services.ModelIndexUtil.getReturnedHits;
 import static io.polyglotted.eswrapper.services.ModelIndexUtil.getTotalHits;
 import static io.polyglotted.eswrapper.services.ModelIndexUtil.headerFrom;
 import static java.util.Collections.singletonList;
+import static java.util.Spliterator.ORDERED;
+import static java.util.Spliterators.spliteratorUnknownSize;
+import static java.util.stream.StreamSupport.stream;
 import static org.elasticsearch.action.support.IndicesOptions.lenientExpandOpen;
 import static org.elasticsearch.common.unit.TimeValue.timeValueMinutes;
 
@@ -45,6 +61,15 @@ public final class QueryWrapper {
 
     private static final TimeValue DEFAULT_KEEP_ALIVE = timeValueMinutes(30);
     private final Client client;
+    @Wither private final DocCache docCache;
+    @Wither private final int multiGetChunkSize;
+    @Wither private final RequestCoalescer requestCoalescer;
+    @Wither private final FilterCache filterCache;
+    @Wither private final MultiSearch searchBatcher;
+    @Wither private final Execution execution;
+    @Wither private final OperationMetrics metrics;
+
+    public QueryWrapper(Client client) { this(client, null, 0, null, null, null, null, NONE); }
 
     public Map<String, String> indexStatus(String index) {
         GetSettingsRequestBuilder settingsRequest = client.admin()
@@ -58,45 +83,79 @@ public final class QueryWrapper {
     }
 
     public SimpleDoc findBy(IndexKey key) {
-        return DocFinder.findBy(client, key.index, key.type, key.id, key.parent, SimpleDocBuilder);
+        return findBy(key.index, key.type, key.id, key.parent, SimpleDocBuilder);
     }
 
     public <T> T findBy(String index, String type, String id, ResultBuilder<T> builder) {
-        return DocFinder.findBy(client, index, type, id, null, builder);
+        return findBy(index, type, id, null, builder);
     }
 
     public <T> T findBy(IndexKey key, ResultBuilder<T> builder) {
-        return DocFinder.findBy(client, key.index, key.type, key.id, key.parent, builder);
+        return findBy(key.index, key.type, key.id, key.parent, builder);
+    }
+
+    private <T> T findBy(String index, String type, String id, String parent, ResultBuilder<T> builder) {
+        return run("get", new String[]{index}, type, 0, () ->
+           DocFinder.findBy(client, docCache, requestCoalescer, index, type, id, parent, builder));
     }
 
     public List<SimpleDoc> findStrict(Iterable<IndexKey> indexKeys) {
-        return findAllBy(client, indexKeys, SimpleDocBuilder, false);
+        return findAll(indexKeys, SimpleDocBuilder, false);
     }
 
     public <T> List<T> findStrict(Iterable<IndexKey> indexKeys, ResultBuilder<T> builder) {
-        return findAllBy(client, indexKeys, builder, false);
+        return findAll(indexKeys, builder, false);
     }
 
     public Map<IndexKey, SimpleDoc> mapAll(Iterable<IndexKey> indexKeys) {
-        return uniqueIndex(findAllBy(client, indexKeys, SimpleDocBuilder, true), SimpleDoc::key);
+        return uniqueIndex(findAll(indexKeys, SimpleDocBuilder, true), SimpleDoc::key);
     }
 
     public List<SimpleDoc> findAll(Iterable<IndexKey> indexKeys) {
-        return findAllBy(client, indexKeys, SimpleDocBuilder, true);
+        return findAll(indexKeys, SimpleDocBuilder, true);
     }
 
     public <T> List<T> findAll(Iterable<IndexKey> indexKeys, ResultBuilder<T> builder) {
-        return findAllBy(client, indexKeys, builder, true);
+        return findAll(indexKeys, builder, true);
+    }
+
+    private <T> List<T> findAll(Iterable<IndexKey> indexKeys, ResultBuilder<T> builder, boolean ignoreFailure) {
+        return run("multi-get", indicesOf(indexKeys), () ->
+           findAllBy(client, docCache, indexKeys, builder, ignoreFailure, multiGetChunkSize));
     }
 
     public Aggregation aggregate(Expression aggs, String... indices) {
-        SearchResponse response = client.search(aggregationToRequest(AggsConverter.build(aggs), indices)).actionGet();
+        SearchResponse response = run("aggregate", indices, () ->
+           client.search(aggregationToRequest(AggsConverter.build(aggs), indices)).actionGet());
         return buildAggregations(singletonList(aggs), response).get(0);
     }
 
+    public ColumnarAggregation aggregateColumnar(Expression aggs, String... indices) {
+        SearchResponse response = run("aggregate", indices, () ->
+           client.search(aggregationToRequest(AggsConverter.build(aggs), indices)).actionGet());
+        return AggsConverter.getColumnar(aggs, response.getAggregations());
+    }
+
+    public TermsPager termsPager(Expression terms, Expression filter, int pageSize, String... indices) {
+        return new TermsPager(this::execute, terms, filter, pageSize, indices);
+    }
+
+    public Stream<Bucket> streamTerms(Expression terms, Expression filter, int pageSize, String... indices) {
+        return stream(spliteratorUnknownSize(termsPager(terms, filter, pageSize, indices), ORDERED), false);
+    }
+
+    public <T> CompletableFuture<List<T>> findAllAsync(Iterable<IndexKey> indexKeys, ResultBuilder<T> builder) {
+        return DocFinder.findAllByAsync(client, docCache, indexKeys, builder, true, multiGetChunkSize);
+    }
+
+    public CompletableFuture<Aggregation> aggregateAsync(Expression aggs, String... indices) {
+        return executeAsync("aggregate", aggregationToRequest(AggsConverter.build(aggs), indices), null, 0)
+           .thenApply(response -> buildAggregations(singletonList(aggs), response).get(0));
+    }
+
     public <T> QueryResponse simpleScroll(SearchRequest request, ResultBuilder<T> resultBuilder) {
         request = request.scroll(DEFAULT_KEEP_ALIVE);
-        SearchResponse searchResponse = client.search(request).actionGet();
+        SearchResponse searchResponse = execute(request);
 
         QueryResponse.Builder response = QueryResponse.responseBuilder();
         final long totalHits = getTotalHits(searchResponse);
@@ -107,33 +166,128 @@ public final class QueryWrapper {
 
             SearchScrollRequest scrollRequest = new SearchScrollRequest(searchResponse.getScrollId())
                .scroll(DEFAULT_KEEP_ALIVE);
-            searchResponse = client.searchScroll(scrollRequest).actionGet();
+            searchResponse = run("scroll", request.indices(), () -> client.searchScroll(scrollRequest).actionGet());
         }
         response.header(new ResponseHeader(tookInMillis, totalHits, totalHits, null));
         return response.build();
     }
 
+    public <T> Stream<T> streamScroll(SearchRequest request, ResultBuilder<T> resultBuilder) {
+        return streamScroll(request, resultBuilder, 1);
+    }
+
+    public <T> Stream<T> streamScroll(SearchRequest request, ResultBuilder<T> resultBuilder, int prefetch) {
+        ScrollIterator<T> iterator = scrollIterator(request, resultBuilder, prefetch);
+        return stream(spliteratorUnknownSize(iterator, ORDERED), false).onClose(iterator::close);
+    }
+
+    public <T> ScrollIterator<T> scrollIterator(SearchRequest request, ResultBuilder<T> resultBuilder, int prefetch) {
+        return new ScrollIterator<>(client, request, resultBuilder, DEFAULT_KEEP_ALIVE, prefetch);
+    }
+
+    public <T> Stream<T> parallelScroll(StandardQuery query, ResultBuilder<T> resultBuilder, int queueCapacity) {
+        return parallelScroll(queryToRequest(query, null, filterCache), resultBuilder, queueCapacity);
+    }
+
+    public <T> Stream<T> parallelScroll(StandardQuery query, ResultBuilder<T> resultBuilder,
+                                        int queueCapacity, int parallelism) {
+        return parallelScroll(queryToRequest(query, null, filterCache), resultBuilder, queueCapacity, parallelism);
+    }
+
+    public <T> Stream<T> parallelScroll(SearchRequest request, ResultBuilder<T> resultBuilder, int queueCapacity) {
+        return parallelScroll(request, resultBuilder, queueCapacity, Runtime.getRuntime().availableProcessors());
+    }
+
+    public <T> Stream<T> parallelScroll(SearchRequest request, ResultBuilder<T> resultBuilder,
+                                        int queueCapacity, int parallelism) {
+        ParallelScroll<T> iterator = new ParallelScroll<>(client, request, resultBuilder,
+           DEFAULT_KEEP_ALIVE, queueCapacity, parallelism);
+        return stream(spliteratorUnknownSize(iterator, 0), false).onClose(iterator::close);
+    }
+
     public <T> QueryResponse scroll(StandardScroll scroll, ResultBuilder<T> resultBuilder) {
-        SearchResponse searchResponse = client.searchScroll(scrollRequest(scroll)).actionGet();
+        SearchResponse searchResponse = run("scroll", new String[0],
+           () -> client.searchScroll(scrollRequest(scroll)).actionGet());
         return responseBuilder(searchResponse, resultBuilder).build();
     }
 
     public <T> QueryResponse search(SearchRequest request, ResultBuilder<T> resultBuilder) {
-        SearchResponse searchResponse = client.search(request).actionGet();
+        SearchResponse searchResponse = execute(request);
         return responseBuilder(searchResponse, resultBuilder).build();
     }
 
     public <T> QueryResponse search(StandardQuery query, FilterBuilder postFilter, ResultBuilder<T> resultBuilder) {
-        SearchResponse searchResponse = client.search(queryToRequest(query, postFilter)).actionGet();
+        SearchRequest request = queryToRequest(query, postFilter, filterCache);
+        if (searchBatcher != null) return run("batched-search", request.indices(),
+           () -> searchBatcher.search(request, resultBuilder, query.aggregates));
+
+        SearchResponse searchResponse = execute(request);
+        return queryResponse(searchResponse, resultBuilder, query.aggregates);
+    }
+
+    public <T> CompletableFuture<QueryResponse> searchAsync(SearchRequest request, ResultBuilder<T> resultBuilder) {
+        return executeAsync(request).thenApply(response -> responseBuilder(response, resultBuilder).build());
+    }
+
+    public <T> CompletableFuture<QueryResponse> searchAsync(StandardQuery query, FilterBuilder postFilter,
+                                                           ResultBuilder<T> resultBuilder) {
+        return executeAsync(queryToRequest(query, postFilter, filterCache))
+           .thenApply(response -> queryResponse(response, resultBuilder, query.aggregates));
+    }
+
+    public List<MultiSearch.Result> searchAll(List<MultiSearch.Item> items) {
+        List<SearchRequest> requests = new ArrayList<>(items.size());
+        for (MultiSearch.Item item : items) requests.add(queryToRequest(item.query, item.postFilter, filterCache));
+        return MultiSearch.searchAll(client, requests, items);
+    }
+
+    public <T> QueryResponse search(PreparedQuery prepared, Map<String, ?> values, ResultBuilder<T> resultBuilder) {
+        SearchResponse searchResponse = execute(prepared.bind(values));
         return responseBuilder(searchResponse, resultBuilder)
-           .aggregations(buildAggregations(query.aggregates, searchResponse)).build();
+           .aggregations(buildAggregations(prepared.aggregates, searchResponse)).build();
     }
 
     public <T> QueryResponse searchBy(Expression filter, ResultBuilder<T> resultBuilder, String... indices) {
-        SearchResponse searchResponse = client.search(filterToRequest(filter, indices)).actionGet();
+        SearchResponse searchResponse = execute(filterToRequest(filter, filterCache, indices));
         return responseBuilder(searchResponse, resultBuilder).build();
     }
 
+    private SearchResponse execute(SearchRequest request) {
+        return run("search", request.indices(), String.join(",", request.types()), request.source() == null ? 0 :
+           request.source().length(), () -> client.search(request).actionGet());
+    }
+
+    private CompletableFuture<SearchResponse> executeAsync(SearchRequest request) {
+        return executeAsync("search", request, String.join(",", request.types()), request.source() == null ? 0 :
+           request.source().length());
+    }
+
+    private CompletableFuture<SearchResponse> executeAsync(String operation, SearchRequest request, String type,
+                                                           long requestBytes) {
+        String[] indices = request.indices();
+        if (execution != null) return execution.submit(operation, indices,
+           () -> run(operation, indices, type, requestBytes, () -> client.search(request).actionGet()));
+        return meteredAsync(metrics, operation, indices, type, requestBytes, () -> {
+            ListenerFuture<SearchResponse> future = new ListenerFuture<>();
+            client.search(request, future);
+            return future;
+        });
+    }
+
+    private <T> T run(String operation, String[] indices, Supplier<T> call) {
+        return run(operation, indices, null, 0, call);
+    }
+
+    private <T> T run(String operation, String[] indices, String type, long requestBytes, Supplier<T> call) {
+        return metered(metrics, execution, operation, indices, type, requestBytes, call);
+    }
+
+    static QueryResponse queryResponse(SearchResponse searchResponse, ResultBuilder<?> resultBuilder,
+                                       List<Expression> aggregates) {
+        return responseBuilder(searchResponse, resultBuilder).aggregations(buildAggregations(aggregates, searchResponse))
+           .build();
+    }
+
     private static <T> QueryResponse.Builder responseBuilder(SearchResponse searchResponse, ResultBuilder<T>
        resultBuilder) {
 
@@ -0,0 +1,228 @@
+package io.polyglotted.eswrapper.services;
+
+import com.google.common.collect.ImmutableSet;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.indices.refresh.RefreshResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static io.polyglotted.eswrapper.query.QueryBuilder.toStrArray;
+import static io.polyglotted.eswrapper.services.SharedScheduler.schedule;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.elasticsearch.action.support.IndicesOptions.lenientExpandOpen;
+import static org.elasticsearch.client.Requests.refreshRequest;
+import static org.elasticsearch.index.query.FilterBuilders.idsFilter;
+import static org.elasticsearch.index.query.QueryBuilders.constantScoreQuery;
+
+@Slf4j
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public abstract class RefreshPolicy {
+    public final Mode mode;
+
+    public enum Mode {IMMEDIATE, NONE, COALESCED, WAIT_UNTIL_VISIBLE}
+
+    abstract void refresh(Client client, String[] indices, BulkResponse... responses);
+
+    CompletableFuture<Void> refreshAsync(Client client, String[] indices, BulkResponse... responses) {
+        refresh(client, indices, responses);
+        return completedFuture(null);
+    }
+
+    public static RefreshPolicy immediate() { return IMMEDIATE; }
+
+    public static RefreshPolicy none() { return NONE; }
+
+    public static RefreshPolicy coalesced(long windowMillis) { return new Coalesced(windowMillis); }
+
+    public static RefreshPolicy waitUntilVisible(long timeoutMillis) { return new WaitUntilVisible(timeoutMillis); }
+
+    private static final RefreshPolicy IMMEDIATE = new RefreshPolicy(Mode.IMMEDIATE) {
+        @Override
+        void refresh(Client client, String[] indices, BulkResponse... responses) {
+            forceRefresh(client, indices);
+        }
+
+        @Override
+        CompletableFuture<Void> refreshAsync(Client client, String[] indices, BulkResponse... responses) {
+            return forceRefreshAsync(client, indices);
+        }
+    };
+
+    private static final RefreshPolicy NONE = new RefreshPolicy(Mode.NONE) {
+        @Override
+        void refresh(Client client, String[] indices, BulkResponse... responses) {}
+    };
+
+    private static void forceRefresh(Client client, String... indices) {
+        client.admin().indices().refresh(refreshRequest(indices)).actionGet();
+    }
+
+    private static CompletableFuture<Void> forceRefreshAsync(Client client, String... indices) {
+        ListenerFuture<RefreshResponse> future = new ListenerFuture<>();
+        client.admin().indices().refresh(refreshRequest(indices), future);
+        return future.thenApply(response -> null);
+    }
+
+    private static final class Coalesced extends RefreshPolicy {
+        private final long windowMillis;
+        private final Set<String> pending = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        private Coalesced(long windowMillis) {
+            super(Mode.COALESCED);
+            checkArgument(windowMillis > 0, "coalescing window must be positive");
+            this.windowMillis = windowMillis;
+        }
+
+        @Override
+        void refresh(Client client, String[] indices, BulkResponse... responses) {
+            if (indices.length == 0) return;
+            for (String index : indices) pending.add(index);
+            if (scheduled.compareAndSet(false, true)) schedule(() -> drain(client), windowMillis);
+        }
+
+        private void drain(Client client) {
+            scheduled.set(false);
+            ImmutableSet<String> indices = ImmutableSet.copyOf(pending);
+            pending.removeAll(indices);
+            if (indices.isEmpty()) return;
+
+            client.admin().indices().refresh(refreshRequest(toStrArray(indices)), new ActionListener<RefreshResponse>() {
+                @Override
+                public void onResponse(RefreshResponse response) {
+                    log.debug("coalesced refresh of " + indices);
+                }
+
+                @Override
+                public void onFailure(Throwable failure) {
+                    log.error("coalesced refresh failed for " + indices + ": " + failure.getMessage());
+                }
+            });
+        }
+    }
+
+    private static final class WaitUntilVisible extends RefreshPolicy {
+        private static final long MAX_POLL_MILLIS = 250;
+        private final long timeoutMillis;
+
+        private WaitUntilVisible(long timeoutMillis) {
+            super(Mode.WAIT_UNTIL_VISIBLE);
+            checkArgument(timeoutMillis > 0, "visibility timeout must be positive");
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        @Override
+        @SneakyThrows(InterruptedException.class)
+        void refresh(Client client, String[] indices, BulkResponse... responses) {
+            Map<String, BulkItemResponse> pending = pendingItems(responses);
+            if (pending == null) {
+                forceRefresh(client, indices);
+                return;
+            }
+
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            long pollMillis = 10;
+            while (!removeVisible(client, pending)) {
+                if (System.currentTimeMillis() >= deadline) {
+                    log.warn("writes not visible after " + timeoutMillis + "ms, forcing refresh");
+                    forceRefresh(client, indices);
+                    return;
+                }
+                Thread.sleep(pollMillis);
+                pollMillis = Math.min(pollMillis * 2, MAX_POLL_MILLIS);
+            }
+        }
+
+        @Override
+        CompletableFuture<Void> refreshAsync(Client client, String[] indices, BulkResponse... responses) {
+            Map<String, BulkItemResponse> pending = pendingItems(responses);
+            if (pending == null) return forceRefreshAsync(client, indices);
+            return pollVisible(client, indices, pending, System.currentTimeMillis() + timeoutMillis, 10);
+        }
+
+        private CompletableFuture<Void> pollVisible(Client client, String[] indices, Map<String, BulkItemResponse>
+           pending, long deadline, long pollMillis) {
+            if (pending.isEmpty()) return completedFuture(null);
+            ListenerFuture<SearchResponse> search = new ListenerFuture<>();
+            client.search(visibilityRequest(pending), search);
+            return search.thenCompose(response -> {
+                if (removeVisible(response, pending)) return completedFuture(null);
+                if (System.currentTimeMillis() >= deadline) {
+                    log.warn("writes not visible after " + timeoutMillis + "ms, forcing refresh");
+                    return forceRefreshAsync(client, indices);
+                }
+                CompletableFuture<Void> polled = new CompletableFuture<>();
+                schedule(() -> pollVisible(client, indices, pending, deadline, Math.min(pollMillis * 2,
+                   MAX_POLL_MILLIS)).whenComplete((result, failure) -> {
+                    if (failure != null) polled.completeExceptionally(failure);
+                    else polled.complete(result);
+                }), pollMillis);
+                return polled;
+            });
+        }
+
+        private static Map<String, BulkItemResponse> pendingItems(BulkResponse... responses) {
+            Map<String, BulkItemResponse> pending = new HashMap<>();
+            for (BulkResponse response : responses) {
+                if (response == null) return null;
+                for (BulkItemResponse item : response) {
+                    if (!item.isFailed()) pending.put(uniqueKey(item.getIndex(), item.getType(), item.getId()), item);
+                }
+            }
+            return pending;
+        }
+
+        private static boolean removeVisible(Client client, Map<String, BulkItemResponse> pending) {
+            return pending.isEmpty() || removeVisible(client.search(visibilityRequest(pending)).actionGet(), pending);
+        }
+
+        private static SearchRequest visibilityRequest(Map<String, BulkItemResponse> pending) {
+            Set<String> indices = new HashSet<>();
+            Set<String> types = new HashSet<>();
+            Set<String> ids = new HashSet<>();
+            for (BulkItemResponse item : pending.values()) {
+                indices.add(item.getIndex());
+                types.add(item.getType());
+                ids.add(item.getId());
+            }
+            return new SearchRequest(toStrArray(indices)).indicesOptions(lenientExpandOpen()).source(
+               new SearchSourceBuilder().size(pending.size() * types.size())
+                  .query(constantScoreQuery(idsFilter(toStrArray(types)).ids(toStrArray(ids))))
+                  .version(true).fetchSource(false));
+        }
+
+        private static boolean removeVisible(SearchResponse response, Map<String, BulkItemResponse> pending) {
+            Map<String, Long> visibleVersions = new HashMap<>();
+            for (SearchHit hit : response.getHits())
+                visibleVersions.put(uniqueKey(hit.getIndex(), hit.getType(), hit.getId()), hit.getVersion());
+
+            pending.entrySet().removeIf(entry -> isVisible(entry.getValue(), visibleVersions.get(entry.getKey())));
+            return pending.isEmpty();
+        }
+
+        private static boolean isVisible(BulkItemResponse item, Long visibleVersion) {
+            return "delete".equals(item.getOpType()) ? visibleVersion == null
+               : (visibleVersion != null && visibleVersion >= item.getVersion());
+        }
+
+        private static String uniqueKey(String index, String type, String id) { return index + "/" + type + "/" + id; }
+    }
+}
@@ -0,0 +1,95 @@
+package io.polyglotted.eswrapper.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.client.Client;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.polyglotted.eswrapper.ElasticConstants.PARENT_META;
+import static io.polyglotted.eswrapper.ElasticConstants.SOURCE_META;
+import static io.polyglotted.eswrapper.services.MicroBatcher.await;
+import static java.util.Arrays.asList;
+
+@Slf4j
+public final class RequestCoalescer {
+    private final Client client;
+    private final MicroBatcher<Pending> batcher;
+    private final ConcurrentMap<List<String>, CompletableFuture<GetResponse>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong lookups = new AtomicLong();
+
+    private RequestCoalescer(Client client, long windowMillis, int maxBatch) {
+        this.client = client;
+        this.batcher = new MicroBatcher<>(windowMillis, maxBatch, this::send);
+    }
+
+    public static RequestCoalescer coalescer(Client client, long windowMillis, int maxBatch) {
+        return new RequestCoalescer(client, windowMillis, maxBatch);
+    }
+
+    public long lookups() { return lookups.get(); }
+
+    public long requests() { return batcher.batches(); }
+
+    GetResponse get(String index, String type, String id, String parent) {
+        lookups.incrementAndGet();
+        List<String> key = asList(index, type, id, parent);
+        CompletableFuture<GetResponse> future = new CompletableFuture<>();
+        CompletableFuture<GetResponse> existing = inFlight.putIfAbsent(key, future);
+        if (existing == null) batcher.enqueue(new Pending(key, future));
+        return await(existing == null ? future : existing);
+    }
+
+    private void send(List<Pending> ready) {
+        MultiGetRequest multiGetRequest = new MultiGetRequest();
+        for (Pending pending : ready) {
+            multiGetRequest.add(new MultiGetRequest.Item(pending.key.get(0), pending.key.get(1), pending.key.get(2))
+               .parent(pending.key.get(3)).fields(SOURCE_META, PARENT_META));
+        }
+        ActionListener<MultiGetResponse> listener = new ActionListener<MultiGetResponse>() {
+            @Override
+            public void onResponse(MultiGetResponse response) {
+                MultiGetItemResponse[] items = response.getResponses();
+                for (int i = 0; i < items.length; i++) {
+                    Pending pending = ready.get(i);
+                    inFlight.remove(pending.key, pending.future);
+                    if (items[i].isFailed()) pending.future.completeExceptionally(new IllegalStateException(
+                       "error multi-get item " + pending.key + ": " + items[i].getFailure().getMessage()));
+                    else pending.future.complete(items[i].getResponse());
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable failure) {
+                log.warn("coalesced multi-get of " + ready.size() + " items failed: " + failure.getMessage());
+                for (Pending pending : ready) {
+                    inFlight.remove(pending.key, pending.future);
+                    pending.future.completeExceptionally(failure);
+                }
+            }
+        };
+        try {
+            client.multiGet(multiGetRequest, listener);
+        } catch (RuntimeException ex) {
+            listener.onFailure(ex);
+        }
+    }
+
+    private static final class Pending {
+        final List<String> key;
+        final CompletableFuture<GetResponse> future;
+
+        Pending(List<String> key, CompletableFuture<GetResponse> future) {
+            this.key = key;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package io.polyglotted.eswrapper.services;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static io.polyglotted.eswrapper.indexing.IgnoreErrors.isRejected;
+import static io.polyglotted.eswrapper.services.SharedScheduler.schedule;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+@Slf4j
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public final class RetryPolicy {
+    private static final RetryPolicy NO_RETRY = new RetryPolicy(0, 0, 0, 0);
+    public final int maxRetries;
+    public final long initialDelayMillis;
+    public final long maxDelayMillis;
+    public final long budgetMillis;
+
+    public static RetryPolicy noRetry() { return NO_RETRY; }
+
+    public static RetryPolicy exponentialBackoff() { return exponentialBackoff(5, 50, 2000, 10000); }
+
+    public static RetryPolicy exponentialBackoff(int maxRetries, long initialDelayMillis,
+                                                 long maxDelayMillis, long budgetMillis) {
+        checkArgument(maxRetries >= 0, "maxRetries cannot be negative");
+        checkArgument(initialDelayMillis > 0 && initialDelayMillis <= maxDelayMillis, "invalid backoff delays");
+        return new RetryPolicy(maxRetries, initialDelayMillis, maxDelayMillis, budgetMillis);
+    }
+
+    BulkResponse execute(BulkRequest request, Function<BulkRequest, BulkResponse> bulk) {
+        BulkResponse response = bulk.apply(request);
+        if (maxRetries == 0 || !response.hasFailures()) return response;
+
+        BulkItemResponse[] items = response.getItems().clone();
+        long tookInMillis = response.getTookInMillis();
+        long deadline = System.currentTimeMillis() + budgetMillis;
+
+        for (int attempt = 0; attempt < maxRetries; attempt++) {
+            List<Integer> rejected = rejectedPositions(items);
+            long delay = delayBefore(rejected, attempt, deadline);
+            if (delay < 0) break;
+            sleep(delay);
+
+            tookInMillis += merge(items, rejected, bulk.apply(retryRequest(request, rejected)));
+        }
+        return new BulkResponse(items, tookInMillis);
+    }
+
+    CompletableFuture<BulkResponse> executeAsync(BulkRequest request,
+                                                 Function<BulkRequest, CompletableFuture<BulkResponse>> bulk) {
+        return bulk.apply(request).thenCompose(response -> {
+            if (maxRetries == 0 || !response.hasFailures()) return completedFuture(response);
+            return retryAsync(request, bulk, response.getItems().clone(), response.getTookInMillis(),
+               System.currentTimeMillis() + budgetMillis, 0);
+        });
+    }
+
+    private CompletableFuture<BulkResponse> retryAsync(BulkRequest request, Function<BulkRequest,
+       CompletableFuture<BulkResponse>> bulk, BulkItemResponse[] items, long tookInMillis, long deadline, int attempt) {
+        List<Integer> rejected = rejectedPositions(items);
+        long delay = attempt < maxRetries ? delayBefore(rejected, attempt, deadline) : -1;
+        if (delay < 0) return completedFuture(new BulkResponse(items, tookInMillis));
+
+        CompletableFuture<BulkResponse> retried = new CompletableFuture<>();
+        schedule(() -> {
+            try {
+                bulk.apply(retryRequest(request, rejected)).whenComplete((response, failure) -> {
+                    if (failure != null) retried.completeExceptionally(failure);
+                    else retried.complete(response);
+                });
+            } catch (RuntimeException ex) {
+                retried.completeExceptionally(ex);
+            }
+        }, delay);
+        return retried.thenCompose(response -> retryAsync(request, bulk, items,
+           tookInMillis + merge(items, rejected, response), deadline, attempt + 1));
+    }
+
+    private long delayBefore(List<Integer> rejected, int attempt, long deadline) {
+        if (rejected.isEmpty()) return -1;
+        long delay = delayFor(attempt);
+        if (System.currentTimeMillis() + delay > deadline) {
+            log.warn("retry budget exhausted with " + rejected.size() + " rejected items");
+            return -1;
+        }
+        log.info("retrying " + rejected.size() + " rejected items in " + delay + "ms (attempt " + (attempt + 1) + ")");
+        return delay;
+    }
+
+    private static BulkRequest retryRequest(BulkRequest request, List<Integer> rejected) {
+        List<ActionRequest> requests = request.requests();
+        BulkRequest retry = new BulkRequest().refresh(request.refresh()).timeout(request.timeout())
+           .consistencyLevel(request.consistencyLevel());
+        for (int position : rejected) retry.add(requests.get(position));
+        return retry;
+    }
+
+    private static long merge(BulkItemResponse[] items, List<Integer> rejected, BulkResponse retried) {
+        BulkItemResponse[] retriedItems = retried.getItems();
+        for (int i = 0; i < retriedItems.length; i++) {
+            items[rejected.get(i)] = relocate(retriedItems[i], rejected.get(i));
+        }
+        return retried.getTookInMillis();
+    }
+
+    long delayFor(int attempt) {
+        long ceiling = Math.min(maxDelayMillis, initialDelayMillis << Math.min(attempt, 30));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    private static List<Integer> rejectedPositions(BulkItemResponse[] items) {
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < items.length; i++) {
+            if (items[i].isFailed() && isRejected(items[i].getFailureMessage())) positions.add(i);
+        }
+        return positions;
+    }
+
+    private static BulkItemResponse relocate(BulkItemResponse item, int position) {
+        return item.isFailed() ? new BulkItemResponse(position, item.getOpType(), item.getFailure())
+           : new BulkItemResponse(position, item.getOpType(), item.getResponse());
+    }
+
+    @SneakyThrows(InterruptedException.class)
+    private static void sleep(long millis) { Thread.sleep(millis); }
+}
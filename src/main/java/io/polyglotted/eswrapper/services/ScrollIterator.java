@@ -0,0 +1,145 @@
+package io.polyglotted.eswrapper.services;
+
+import io.polyglotted.eswrapper.query.ResultBuilder;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Throwables.propagate;
+import static io.polyglotted.eswrapper.services.ModelIndexUtil.getReturnedHits;
+import static io.polyglotted.eswrapper.services.ModelIndexUtil.getTotalHits;
+
+@Slf4j
+public final class ScrollIterator<T> implements Iterator<T>, AutoCloseable {
+    private static final Object END = new Object();
+    private final Client client;
+    private final ResultBuilder<T> resultBuilder;
+    private final TimeValue keepAlive;
+    private final int prefetch;
+    private final long totalHits;
+    private final BlockingQueue<Object> pages = new LinkedBlockingQueue<>();
+    private final AtomicInteger buffered = new AtomicInteger();
+    private final AtomicBoolean fetching = new AtomicBoolean(false);
+    private volatile String scrollId;
+    private volatile boolean exhausted = false;
+    private volatile boolean closed = false;
+    private Iterator<T> current = Collections.emptyIterator();
+    private boolean ended = false;
+
+    ScrollIterator(Client client, SearchRequest request, ResultBuilder<T> resultBuilder, TimeValue keepAlive, int prefetch) {
+        checkArgument(prefetch >= 0, "prefetch depth cannot be negative");
+        this.client = client;
+        this.resultBuilder = resultBuilder;
+        this.keepAlive = keepAlive;
+        this.prefetch = prefetch;
+
+        SearchResponse response = client.search(request.scroll(keepAlive)).actionGet();
+        this.totalHits = getTotalHits(response);
+        this.scrollId = response.getScrollId();
+        if (totalHits == 0 || getReturnedHits(response) > 0) accept(response);
+        requestPage(prefetch);
+    }
+
+    public long totalHits() { return totalHits; }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (ended || closed) return false;
+            requestPage(1);
+
+            Object page = take();
+            if (page == END || page instanceof Throwable) {
+                ended = true;
+                close();
+                if (page == END) return false;
+                throw propagate((Throwable) page);
+            }
+            buffered.decrementAndGet();
+            current = ((List<T>) page).iterator();
+            requestPage(prefetch);
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return current.next();
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        pages.add(END);
+        clearScroll(scrollId);
+    }
+
+    private void accept(SearchResponse response) {
+        scrollId = response.getScrollId();
+        if (closed) {
+            clearScroll(scrollId);
+            pages.add(END);
+        } else if (getReturnedHits(response) > 0) {
+            buffered.incrementAndGet();
+            pages.add(resultBuilder.buildFrom(response));
+        } else {
+            exhausted = true;
+            pages.add(END);
+        }
+    }
+
+    private void requestPage(int depth) {
+        if (exhausted || closed || buffered.get() >= depth || !fetching.compareAndSet(false, true)) return;
+
+        client.searchScroll(new SearchScrollRequest(scrollId).scroll(keepAlive).listenerThreaded(true),
+           new ActionListener<SearchResponse>() {
+               @Override
+               public void onResponse(SearchResponse response) {
+                   try {
+                       accept(response);
+                       fetching.set(false);
+                       requestPage(prefetch);
+                   } catch (RuntimeException ex) {
+                       onFailure(ex);
+                   }
+               }
+
+               @Override
+               public void onFailure(Throwable failure) {
+                   fetching.set(false);
+                   exhausted = true;
+                   pages.add(failure);
+               }
+           });
+    }
+
+    @SneakyThrows(InterruptedException.class)
+    private Object take() { return pages.take(); }
+
+    private void clearScroll(String scrollId) {
+        if (scrollId == null) return;
+        try {
+            client.prepareClearScroll().addScrollId(scrollId).execute();
+        } catch (RuntimeException ex) {
+            log.warn("unable to clear scroll " + scrollId + ": " + ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package io.polyglotted.eswrapper.services;
+
+import com.google.common.collect.ImmutableMap;
+import io.polyglotted.pgmodel.search.IndexKey;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.index.engine.DocumentAlreadyExistsException;
+import org.elasticsearch.index.engine.VersionConflictEngineException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+@Slf4j
+public final class SequenceAllocator {
+    static final String SEQUENCE_TYPE = "$sequence";
+    private final Client client;
+    private final IndexKey key;
+    private final int blockSize;
+    private final int refillAt;
+    private final AtomicReference<Range> current = new AtomicReference<>(new Range(1, 0));
+    private final AtomicReference<CompletableFuture<Range>> pending = new AtomicReference<>();
+
+    SequenceAllocator(Client client, IndexKey key, int blockSize, double refillRatio) {
+        checkArgument(blockSize > 0, "blockSize must be positive");
+        checkArgument(refillRatio >= 0 && refillRatio < 1, "refillRatio must be between 0 and 1");
+        this.client = client;
+        this.key = key;
+        this.blockSize = blockSize;
+        this.refillAt = (int) (blockSize * refillRatio);
+    }
+
+    public long nextId() {
+        while (true) {
+            Range range = current.get();
+            long id = range.cursor.getAndIncrement();
+            if (id <= range.end) {
+                if (range.end - id == refillAt) prefetch();
+                return id;
+            }
+            advance(range);
+        }
+    }
+
+    public long[] nextIds(int count) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) ids[i] = nextId();
+        return ids;
+    }
+
+    private synchronized void advance(Range exhausted) {
+        if (current.get() != exhausted) return;
+        CompletableFuture<Range> prefetched = pending.getAndSet(null);
+        Range next = null;
+        if (prefetched != null) {
+            try {
+                next = prefetched.join();
+            } catch (RuntimeException ex) {
+                log.warn("sequence prefetch failed for " + key.id + ": " + ex.getMessage());
+            }
+        }
+        current.set(next != null ? next : reserve());
+    }
+
+    private void prefetch() {
+        CompletableFuture<Range> future = new CompletableFuture<>();
+        if (!pending.compareAndSet(null, future)) return;
+
+        CompletableFuture.runAsync(() -> {
+            try {
+                future.complete(reserve());
+            } catch (RuntimeException ex) {
+                future.completeExceptionally(ex);
+            }
+        });
+    }
+
+    private Range reserve() {
+        String counterId = key.type + "#" + key.id;
+        while (true) {
+            GetResponse response = client.prepareGet(key.index, SEQUENCE_TYPE, counterId).get();
+            long hi = response.isExists() ? ((Number) response.getSource().get("hi")).longValue() : 0L;
+            IndexRequest request = new IndexRequest(key.index, SEQUENCE_TYPE, counterId)
+               .source(ImmutableMap.of("hi", hi + blockSize));
+            if (response.isExists()) request.version(response.getVersion());
+            else request.create(true);
+            try {
+                client.index(request).actionGet();
+                return new Range(hi + 1, hi + blockSize);
+            } catch (VersionConflictEngineException | DocumentAlreadyExistsException ex) {
+                log.debug("sequence reservation raced for " + key.id + ", retrying");
+            }
+        }
+    }
+
+    private static final class Range {
+        final AtomicLong cursor;
+        final long end;
+
+        Range(long start, long end) {
+            this.cursor = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
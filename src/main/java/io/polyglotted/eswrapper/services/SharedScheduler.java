@@ -0,0 +1,19 @@
+package io.polyglotted.eswrapper.services;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+//one daemon timer for the delayed hand-offs of the wrappers, tasks must only start async calls and never block
+abstract class SharedScheduler {
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+       new ThreadFactoryBuilder().setDaemon(true).setNameFormat("eswrapper-scheduler-%d").build());
+
+    static ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return SCHEDULER.schedule(task, delayMillis, MILLISECONDS);
+    }
+}
@@ -0,0 +1,101 @@
+package io.polyglotted.eswrapper.services;
+
+import com.google.common.collect.ImmutableList;
+import io.polyglotted.eswrapper.query.AggsConverter;
+import io.polyglotted.pgmodel.search.query.Bucket;
+import io.polyglotted.pgmodel.search.query.Expression;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.aggregations.AbstractAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.terms.StringTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+import static io.polyglotted.eswrapper.query.AggsConverter.buildTermsPage;
+import static io.polyglotted.eswrapper.query.QueryBuilder.termsPageRequest;
+import static io.polyglotted.pgmodel.search.query.Aggregates.FieldKey;
+
+public final class TermsPager implements Iterator<Bucket> {
+    private final Function<SearchRequest, SearchResponse> search;
+    private final Expression terms;
+    private final Expression filter;
+    private final AbstractAggregationBuilder aggs;
+    private final int pageSize;
+    private final String[] indices;
+    private Iterator<Bucket> current = Collections.emptyIterator();
+    private String after;
+    private Object afterTerm;
+    private boolean exhausted = false;
+    private int pages = 0;
+
+    TermsPager(Function<SearchRequest, SearchResponse> search, Expression terms, Expression filter, int pageSize,
+               String... indices) {
+        this.search = search;
+        this.terms = terms;
+        this.filter = filter;
+        this.aggs = buildTermsPage(terms, pageSize);
+        this.pageSize = pageSize;
+        this.indices = indices;
+    }
+
+    public int pages() { return pages; }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (exhausted) return false;
+            fetchPage();
+        }
+        return true;
+    }
+
+    @Override
+    public Bucket next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return current.next();
+    }
+
+    private void fetchPage() {
+        List<Bucket> kept = new ArrayList<>();
+        Object lastTerm = null;
+        for (int size = pageSize; kept.isEmpty() && !exhausted; size *= 2) {
+            SearchRequest request = termsPageRequest(filter, size == pageSize ? aggs : buildTermsPage(terms, size),
+               terms.stringArg(FieldKey), after, indices);
+            SearchResponse response = search.apply(request);
+            List<Bucket> buckets = ImmutableList.copyOf(AggsConverter.get(terms, response.getAggregations()).buckets());
+            Terms raw = response.getAggregations().get(terms.label);
+            List<Terms.Bucket> rawBuckets = raw.getBuckets();
+            pages++;
+            if (buckets.size() < size) exhausted = true;
+            // a doc matching "> after" may still carry earlier values of a multi-valued field
+            for (int i = 0; i < buckets.size(); i++) {
+                Object term = termOf(raw, rawBuckets.get(i));
+                if (afterTerm != null && compareTerms(term, afterTerm) <= 0) continue;
+                kept.add(buckets.get(i));
+                lastTerm = term;
+            }
+        }
+        if (!kept.isEmpty()) {
+            after = kept.get(kept.size() - 1).key;
+            afterTerm = lastTerm;
+        }
+        current = kept.iterator();
+    }
+
+    // numeric and date terms sort by value, so "10" must follow "9"
+    private static Object termOf(Terms raw, Terms.Bucket bucket) {
+        return raw instanceof StringTerms ? bucket.getKey() : new BigDecimal(bucket.getKeyAsNumber().toString());
+    }
+
+    private static int compareTerms(Object left, Object right) {
+        return left instanceof BigDecimal ? ((BigDecimal) left).compareTo((BigDecimal) right) :
+           ((String) left).compareTo((String) right);
+    }
+}
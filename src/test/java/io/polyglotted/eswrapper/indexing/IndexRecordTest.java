@@ -12,8 +12,14 @@ import static io.polyglotted.eswrapper.indexing.IndexRecord.createRecord;
 import static io.polyglotted.eswrapper.indexing.IndexRecord.updateRecord;
 import static io.polyglotted.eswrapper.indexing.IndexSerializer.GSON;
 import static io.polyglotted.pgmodel.search.IndexKey.keyWith;
+import static io.polyglotted.pgmodel.search.index.HiddenFields.APPROVAL_ROLES_FIELD;
+import static io.polyglotted.pgmodel.search.index.HiddenFields.COMMENT_FIELD;
+import static io.polyglotted.pgmodel.search.index.HiddenFields.USER_FIELD;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.testng.Assert.assertEquals;
 
 public class IndexRecordTest {
 
@@ -51,4 +57,27 @@ public class IndexRecordTest {
         Object actual = GSON.fromJson(source, clazz);
         assertThat(source, actual, is(expected == null ? original : expected));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSourceOfEscapesMetadata() {
+        IndexRecord record = updateRecord(keyWith("a", "aa", "c")).comment("said \"hi\"\n\\ ok")
+           .approvalRoles("r\"1", "r\u00e9").source(" { \"name\" : \"caf\u00e9\" } ".getBytes(UTF_8)).build();
+
+        String source = RecordAction.sourceOf(record, 1425494500000L, "te\"ster");
+        assertThat(source, source.startsWith(" { \"name\" : \"caf\u00e9\" ,\"&ancestor\":"), is(true));
+
+        Map<?, ?> parsed = GSON.fromJson(source, Map.class);
+        assertEquals(parsed.get(COMMENT_FIELD), "said \"hi\"\n\\ ok");
+        assertEquals(parsed.get(APPROVAL_ROLES_FIELD), asList("r\"1", "r\u00e9"));
+        assertEquals(parsed.get(USER_FIELD), "te\"ster");
+        assertEquals(parsed.get("name"), "caf\u00e9");
+    }
+
+    @Test
+    public void testSourceAsStringAndToString() {
+        IndexRecord record = createRecord("a", "aa", "c").source("{\"name\":\"caf\u00e9\"}").build();
+
+        assertEquals(record.sourceAsString(), "{\"name\":\"caf\u00e9\"}");
+        assertThat(record.toString(), record.toString().contains("{\"name\":\"caf\u00e9\"}"), is(true));
+    }
+}
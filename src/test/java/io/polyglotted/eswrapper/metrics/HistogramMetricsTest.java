@@ -0,0 +1,50 @@
+package io.polyglotted.eswrapper.metrics;
+
+import com.google.common.collect.ImmutableMap;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class HistogramMetricsTest {
+
+    @Test
+    public void percentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1000; i++) histogram.record(i * 1000);
+
+        assertEquals(histogram.count(), 1000);
+        assertEquals(histogram.max(), 1000000);
+        assertEquals(histogram.mean(), 500500.0);
+        assertWithin(histogram.percentile(50), 500000);
+        assertWithin(histogram.percentile(99), 990000);
+        assertEquals(histogram.percentile(100), 1000000);
+    }
+
+    @Test
+    public void bucketsCoverFullRange() {
+        for (long value : new long[]{0, 1, 7, 8, 15, 16, 17, 1023, 1024, Long.MAX_VALUE}) {
+            long upper = LatencyHistogram.upperBoundOf(LatencyHistogram.indexOf(value));
+            assertTrue(upper >= value && upper - value <= value / 8, value + ":" + upper);
+        }
+    }
+
+    @Test
+    public void recordsByOperationIndexAndType() {
+        HistogramMetrics metrics = new HistogramMetrics();
+        metrics.record("bulk", "trades", null, 2000, 10, 512, 0, null);
+        metrics.record("bulk", "trades", null, 4000, 5, 256, 0, new IllegalStateException());
+
+        HistogramMetrics.Stats stats = metrics.stats("bulk", "trades", null);
+        assertEquals(stats.latency.count(), 2);
+        assertEquals(stats.items(), 15);
+        assertEquals(stats.requestBytes(), 768);
+        assertEquals(stats.errors(), ImmutableMap.of("IllegalStateException", 1L));
+        assertNull(metrics.stats("search", "trades", null));
+    }
+
+    private static void assertWithin(long actual, long expected) {
+        assertTrue(Math.abs(actual - expected) <= expected / 8, actual + " vs " + expected);
+    }
+}
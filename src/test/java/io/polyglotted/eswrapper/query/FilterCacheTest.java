@@ -0,0 +1,56 @@
+package io.polyglotted.eswrapper.query;
+
+import io.polyglotted.pgmodel.search.query.Expression;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+
+import static io.polyglotted.eswrapper.query.FilterCache.filterCache;
+import static io.polyglotted.pgmodel.search.query.Expressions.and;
+import static io.polyglotted.pgmodel.search.query.Expressions.equalsTo;
+import static io.polyglotted.pgmodel.search.query.Expressions.in;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Base64.getDecoder;
+import static org.elasticsearch.common.xcontent.XContentHelper.convertToJson;
+import static org.elasticsearch.common.xcontent.XContentHelper.convertToMap;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class FilterCacheTest {
+
+    @Test
+    public void rendersOnceAndMarksHotFilters() throws Exception {
+        FilterCache cache = filterCache(10, 3);
+        String expected = convertToJson(ExprConverter.buildFilter(sample()).buildAsBytes(), false, false);
+
+        assertEquals(wrapped(cache.buildFilter(sample())), expected);
+        assertEquals(wrapped(cache.buildFilter(sample())), expected);
+        String hot = wrapped(cache.buildFilter(sample()));
+        assertTrue(hot.startsWith("{\"and\":{\"filters\":[" + expected + "],\"_cache\":true,\"_cache_key\":\"pg_"), hot);
+
+        assertEquals(cache.stats().missCount(), 1);
+        assertEquals(cache.stats().hitCount(), 2);
+        assertEquals(cache.size(), 1);
+    }
+
+    @Test
+    public void evictsBeyondMaximumSize() {
+        FilterCache cache = filterCache(2, 1);
+        for (int i = 0; i < 5; i++) cache.buildFilter(equalsTo("a", "v" + i));
+        assertTrue(cache.size() <= 2);
+        assertNull(cache.buildFilter(null));
+    }
+
+    private static Expression sample() {
+        return and(equalsTo("region", "EMEA"), in("trader", "Alex", "Bob", "Charlie"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String wrapped(FilterBuilder filter) throws Exception {
+        Map<String, Object> map = convertToMap(filter.buildAsBytes(), false).v2();
+        String encoded = (String) ((Map<String, Object>) map.get("wrapper")).get("filter");
+        return new String(getDecoder().decode(encoded), UTF_8);
+    }
+}
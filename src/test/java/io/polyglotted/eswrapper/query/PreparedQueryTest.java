@@ -0,0 +1,64 @@
+package io.polyglotted.eswrapper.query;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.elasticsearch.action.search.SearchRequest;
+import org.testng.annotations.Test;
+
+import static io.polyglotted.eswrapper.query.PreparedQuery.param;
+import static io.polyglotted.eswrapper.query.PreparedQuery.prepare;
+import static io.polyglotted.eswrapper.query.QueryBuilder.queryToRequest;
+import static io.polyglotted.pgmodel.search.query.Expressions.between;
+import static io.polyglotted.pgmodel.search.query.Expressions.equalsTo;
+import static io.polyglotted.pgmodel.search.query.Expressions.in;
+import static io.polyglotted.pgmodel.search.query.StandardQuery.queryBuilder;
+import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+
+public class PreparedQueryTest {
+
+    @Test
+    public void bindMatchesBuiltQuery() {
+        PreparedQuery prepared = prepare(queryBuilder().index("trades").size(20).expression(
+           equalsTo("region", param("region")), in("trader", param("traders"))).build());
+        assertEquals(prepared.parameters, ImmutableSet.of("region", "traders"));
+
+        SearchRequest bound = prepared.bind(ImmutableMap.of("region", "EMEA", "traders", asList("Alex", "Bob")));
+        SearchRequest built = queryToRequest(queryBuilder().index("trades").size(20).expression(
+           equalsTo("region", "EMEA"), in("trader", "Alex", "Bob")).build(), null);
+        assertEquals(bound.source().toUtf8(), built.source().toUtf8());
+        assertEquals(bound.indices(), built.indices());
+    }
+
+    @Test
+    public void bindsScalarIntoArraySlot() {
+        PreparedQuery prepared = prepare(queryBuilder().index("trades").expression(
+           in("trader", param("traders"))).build());
+        SearchRequest bound = prepared.bind(ImmutableMap.of("traders", "Alex"));
+        assertEquals(bound.source().toUtf8(), queryToRequest(queryBuilder().index("trades").expression(
+           in("trader", "Alex")).build(), null).source().toUtf8());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "unbound parameter region")
+    public void failsOnUnboundParameter() {
+        prepare(queryBuilder().index("trades").expression(equalsTo("region", param("region"))).build())
+           .bind(ImmutableMap.of());
+    }
+
+    @Test
+    public void bindsNumericSlots() {
+        PreparedQuery prepared = prepare(queryBuilder().index("trades").expression(
+           between("value", param("low"), param("high")), equalsTo("tradeDate", param("date"))).build());
+        assertEquals(prepared.parameters, ImmutableSet.of("low", "high", "date"));
+
+        SearchRequest bound = prepared.bind(ImmutableMap.of("low", 10.5, "high", 20, "date", 1425427200000L));
+        assertEquals(bound.source().toUtf8(), queryToRequest(queryBuilder().index("trades").expression(
+           between("value", 10.5, 20), equalsTo("tradeDate", 1425427200000L)).build(), null).source().toUtf8());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class,
+       expectedExceptionsMessageRegExp = "parameters \\[region\\] are not whole values in the prepared query")
+    public void failsOnEmbeddedParameter() {
+        prepare(queryBuilder().index("trades").expression(equalsTo("region", "EU-" + param("region"))).build());
+    }
+}
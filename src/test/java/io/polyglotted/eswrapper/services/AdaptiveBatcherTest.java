@@ -0,0 +1,62 @@
+package io.polyglotted.eswrapper.services;
+
+import io.polyglotted.eswrapper.AbstractElasticTest;
+import io.polyglotted.pgmodel.search.IndexKey;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.testng.annotations.Test;
+
+import static com.google.common.collect.Iterables.transform;
+import static io.polyglotted.eswrapper.indexing.IndexSetting.settingBuilder;
+import static io.polyglotted.eswrapper.services.AdaptiveBatcher.batcherBuilder;
+import static io.polyglotted.eswrapper.services.Trade.TRADE_TYPE;
+import static io.polyglotted.eswrapper.services.Trade.sampleTrades;
+import static io.polyglotted.eswrapper.services.Trade.tradesRequest;
+import static io.polyglotted.pgmodel.search.IndexKey.keyWith;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class AdaptiveBatcherTest extends AbstractElasticTest {
+    private static final String BATCHER_INDEX = "batcher_index";
+
+    @Override
+    protected void performSetup() {
+        admin.dropIndex(BATCHER_INDEX);
+        admin.createIndex(settingBuilder(3, 0).build(), BATCHER_INDEX);
+    }
+
+    @Test
+    public void splitsAndGrowsTarget() {
+        AdaptiveBatcher batcher = batcherBuilder().minSize(2).initialSize(4).increaseStep(2)
+           .latencyTargetMillis(60000).build();
+        BulkResponse response = indexer.withAdaptiveBatcher(batcher).index(tradesRequest(BATCHER_INDEX, 1425494500000L));
+
+        BulkItemResponse[] items = response.getItems();
+        assertEquals(items.length, 20);
+        for (int i = 0; i < items.length; i++) assertEquals(items[i].getId(), sampleTrades().get(i).address);
+        assertTrue(batcher.targetSize() > 4);
+        assertTrue(batcher.throughput() > 0);
+        assertEquals(batcher.rejectionRate(), 0.0);
+        assertEquals(query.findAll(transformKeys()).size(), 20);
+    }
+
+    @Test
+    public void shrinksOnSlowBulk() {
+        AdaptiveBatcher batcher = batcherBuilder().minSize(1).initialSize(8).latencyTargetMillis(0).build();
+        indexer.withAdaptiveBatcher(batcher).index(tradesRequest(BATCHER_INDEX, 1425494500000L));
+        assertEquals(batcher.targetSize(), 1);
+    }
+
+    @Test
+    public void emptyRequest() {
+        AdaptiveBatcher batcher = batcherBuilder().build();
+        assertNull(indexer.withAdaptiveBatcher(batcher).index(new BulkRequest()));
+        assertEquals(batcher.targetSize(), 500);
+    }
+
+    private static Iterable<IndexKey> transformKeys() {
+        return transform(sampleTrades(), trade -> keyWith(BATCHER_INDEX, TRADE_TYPE, trade.address));
+    }
+}
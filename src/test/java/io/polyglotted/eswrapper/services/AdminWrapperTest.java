@@ -8,6 +8,11 @@ import org.testng.annotations.Test;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.collect.Maps.uniqueIndex;
 import static io.polyglotted.eswrapper.indexing.IndexSerializer.deserList;
@@ -23,6 +28,7 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 public class AdminWrapperTest extends AbstractElasticTest {
 
@@ -151,4 +157,47 @@ public class AdminWrapperTest extends AbstractElasticTest {
         List<Long> sequences = indexer.generateSequences(keyWith(ADMIN_INDICES[0], ADMIN_TYPE, "Sequence"), 10);
         assertEquals(sequences, ImmutableList.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L));
     }
+
+    @Test
+    public void allocateSequenceRanges() throws Exception {
+        admin.createIndex(settingBuilder().numberOfShards(1).autoExpandReplicas().build(), ADMIN_INDICES[0]);
+        admin.createType(typeBuilder().index(ADMIN_INDICES[0]).type(ADMIN_TYPE).enabled(false).enableAll(false)
+           .enableSource(false).enableType(false).build());
+        SequenceAllocator first = indexer.sequenceAllocator(keyWith(ADMIN_INDICES[0], ADMIN_TYPE, "HiLo"), 10);
+        for (long expected = 1; expected <= 5; expected++) assertEquals(first.nextId(), expected);
+
+        SequenceAllocator second = indexer.sequenceAllocator(keyWith(ADMIN_INDICES[0], ADMIN_TYPE, "HiLo"), 10);
+        long secondId = second.nextId();
+        assertTrue(secondId > 10, "second allocator reused a reserved range: " + secondId);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < 4; i++) executor.submit(() -> { for (long id : first.nextIds(50)) ids.add(id); });
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(ids.size(), 200);
+        assertFalse(ids.contains(secondId));
+    }
+
+    @Test
+    public void allocateMixedBlockSizes() throws Exception {
+        admin.createIndex(settingBuilder().numberOfShards(1).autoExpandReplicas().build(), ADMIN_INDICES[0]);
+        admin.createType(typeBuilder().index(ADMIN_INDICES[0]).type(ADMIN_TYPE).enabled(false).enableAll(false)
+           .enableSource(false).enableType(false).build());
+        SequenceAllocator small = indexer.sequenceAllocator(keyWith(ADMIN_INDICES[0], ADMIN_TYPE, "HiLo"), 3);
+        SequenceAllocator large = indexer.sequenceAllocator(keyWith(ADMIN_INDICES[0], ADMIN_TYPE, "HiLo"), 10);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < 2; i++) {
+            executor.submit(() -> { for (long id : small.nextIds(40)) ids.add(id); });
+            executor.submit(() -> { for (long id : large.nextIds(40)) ids.add(id); });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(ids.size(), 160);
+
+        long sequence = indexer.generateSequence(keyWith(ADMIN_INDICES[0], ADMIN_TYPE, "HiLo"));
+        assertEquals(sequence, 1);
+    }
 }
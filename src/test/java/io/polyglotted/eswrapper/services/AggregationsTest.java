@@ -1,13 +1,21 @@
 package io.polyglotted.eswrapper.services;
 
+import com.google.common.collect.ImmutableMap;
 import io.polyglotted.eswrapper.AbstractElasticTest;
+import io.polyglotted.eswrapper.query.ColumnarAggregation;
 import io.polyglotted.eswrapper.query.ResultBuilder;
 import io.polyglotted.pgmodel.search.index.FieldType;
 import io.polyglotted.pgmodel.search.query.*;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.index.IndexRequest;
 import org.testng.annotations.Test;
 
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
+import static com.google.common.collect.Iterators.transform;
+import static com.google.common.collect.Lists.newArrayList;
 import static io.polyglotted.eswrapper.indexing.IndexSetting.settingBuilder;
 import static io.polyglotted.eswrapper.indexing.TypeMapping.typeBuilder;
 import static io.polyglotted.eswrapper.query.AggsConverter.Avg;
@@ -26,6 +34,9 @@ import static io.polyglotted.pgmodel.search.query.Aggregates.*;
 import static io.polyglotted.pgmodel.search.query.Expressions.equalsTo;
 import static io.polyglotted.pgmodel.search.query.Flattened.flattened;
 import static io.polyglotted.pgmodel.search.query.StandardQuery.queryBuilder;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
@@ -154,6 +165,77 @@ public class AggregationsTest extends AbstractElasticTest {
         assertFalse(iterator.hasNext());
     }
 
+    @Test
+    public void getColumnarMatchesEagerAggregation() throws Exception {
+        Builder regions = termBuilder("regions", FieldRegion);
+        regions.addAndGet(dateHistogramBuilder("dates", FieldDate, "month"))
+           .addAndGet(statsBuilder(FieldValue, FieldValue));
+        Aggregation eager = indexAndAggregate(regions.build());
+        ColumnarAggregation columnar = query.aggregateColumnar(regions.build(), TRADE_AGGREGATES_INDEX);
+
+        assertEquals(newArrayList(Flattened.flatten(columnar.aggregation()).iterator()),
+           newArrayList(Flattened.flatten(eager).iterator()));
+        assertThat(columnar.rows(), is(1));
+        assertThat(columnar.key(0), is("EMEA"));
+        assertThat(columnar.docCount(0), is(11L));
+
+        ColumnarAggregation dates = columnar.child("dates");
+        assertThat(dates.rows(), is(columnar.bucketCount()));
+        ColumnarAggregation stats = dates.child(FieldValue);
+        assertThat(stats.rows(), is(dates.bucketCount()));
+        assertThat(stats.longValue(dates.bucketStart(0), Count.name()), is(dates.docCount(dates.bucketStart(0))));
+    }
+
+    @Test
+    public void pageThroughTerms() throws Exception {
+        indexer.index(tradesRequest(TRADE_AGGREGATES_INDEX, System.currentTimeMillis()));
+        Builder regions = termBuilder("regions", FieldRegion);
+        regions.add(sumBuilder(FieldValue, FieldValue));
+
+        TermsPager pager = query.termsPager(regions.build(), null, 3, TRADE_AGGREGATES_INDEX);
+        assertBucket(pager.next(), "APAC", 1L);
+        assertBucket(pager.next(), "EMEA", 11L);
+        assertBucket(pager.next(), "NA", 5L);
+        assertBucket(pager.next(), "SA", 3L);
+        assertFalse(pager.hasNext());
+        assertThat(pager.pages(), is(2));
+
+        assertThat(query.streamTerms(regions.build(), equalsTo(FieldRegion, "NA"), 1, TRADE_AGGREGATES_INDEX)
+           .map(bucket -> bucket.key).collect(toList()), is(singletonList("NA")));
+    }
+
+    @Test
+    public void pageThroughMultiValuedTerms() throws Exception {
+        indexer.index(new BulkRequest().refresh(true)
+           .add(new IndexRequest(TRADE_AGGREGATES_INDEX, TRADE_TYPE, "multi:1").source(regions("APAC", "ZZ")))
+           .add(new IndexRequest(TRADE_AGGREGATES_INDEX, TRADE_TYPE, "multi:2").source(regions("BB", "EMEA")))
+           .add(new IndexRequest(TRADE_AGGREGATES_INDEX, TRADE_TYPE, "multi:3").source(regions("CC", "ZZ"))));
+
+        TermsPager pager = query.termsPager(termBuilder("regions", FieldRegion).build(), null, 2, TRADE_AGGREGATES_INDEX);
+        assertBucket(pager.next(), "APAC", 1L);
+        assertBucket(pager.next(), "BB", 1L);
+        assertBucket(pager.next(), "CC", 1L);
+        assertBucket(pager.next(), "EMEA", 1L);
+        assertBucket(pager.next(), "ZZ", 2L);
+        assertFalse(pager.hasNext());
+    }
+
+    @Test
+    public void pageThroughNumericTerms() throws Exception {
+        BulkRequest request = new BulkRequest().refresh(true);
+        for (int i = 1; i <= 14; i++)
+            request.add(new IndexRequest(TRADE_AGGREGATES_INDEX, "counter", "seq:" + i).source("sequence", i));
+        indexer.index(request);
+
+        TermsPager pager = query.termsPager(termBuilder("sequences", "sequence").build(), null, 3, TRADE_AGGREGATES_INDEX);
+        List<String> keys = newArrayList(transform(pager, bucket -> bucket.key));
+        assertThat(keys, is(asList("1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13", "14")));
+    }
+
+    private static Map<String, Object> regions(String... regions) {
+        return ImmutableMap.of(FieldRegion, asList(regions));
+    }
+
     private Aggregation indexAndAggregate(Expression aggs) {
         indexer.index(tradesRequest(TRADE_AGGREGATES_INDEX, System.currentTimeMillis()));
         return query.aggregate(aggs, TRADE_AGGREGATES_INDEX);
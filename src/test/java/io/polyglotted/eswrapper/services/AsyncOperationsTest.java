@@ -0,0 +1,114 @@
+package io.polyglotted.eswrapper.services;
+
+import io.polyglotted.eswrapper.AbstractElasticTest;
+import io.polyglotted.eswrapper.indexing.Bundling;
+import io.polyglotted.eswrapper.metrics.HistogramMetrics;
+import io.polyglotted.pgmodel.search.IndexKey;
+import io.polyglotted.pgmodel.search.SimpleDoc;
+import io.polyglotted.pgmodel.search.query.Aggregation;
+import io.polyglotted.pgmodel.search.query.QueryResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static io.polyglotted.eswrapper.indexing.Bundling.bundlingBuilder;
+import static io.polyglotted.eswrapper.indexing.IndexRecord.createRecord;
+import static io.polyglotted.eswrapper.indexing.IndexSerializer.GSON;
+import static io.polyglotted.eswrapper.indexing.IndexSetting.settingBuilder;
+import static io.polyglotted.eswrapper.query.AggsConverter.Sum;
+import static io.polyglotted.eswrapper.query.ResultBuilder.IndexKeyBuilder;
+import static io.polyglotted.eswrapper.query.ResultBuilder.SimpleDocBuilder;
+import static io.polyglotted.eswrapper.services.AdaptiveBatcher.batcherBuilder;
+import static io.polyglotted.eswrapper.services.DocCache.cacheBuilder;
+import static io.polyglotted.eswrapper.services.Execution.executionBuilder;
+import static io.polyglotted.eswrapper.services.RefreshPolicy.waitUntilVisible;
+import static io.polyglotted.eswrapper.services.Trade.FieldValue;
+import static io.polyglotted.eswrapper.services.Trade.TRADE_TYPE;
+import static io.polyglotted.eswrapper.services.Trade.sampleTrades;
+import static io.polyglotted.pgmodel.search.IndexKey.keyWith;
+import static io.polyglotted.pgmodel.search.query.Aggregates.sum;
+import static io.polyglotted.pgmodel.search.query.StandardQuery.queryBuilder;
+import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class AsyncOperationsTest extends AbstractElasticTest {
+    private static final String ASYNC_INDEX = "async_index";
+
+    @Override
+    protected void performSetup() {
+        admin.dropIndex(ASYNC_INDEX);
+        admin.createIndex(settingBuilder(3, 0).build(), ASYNC_INDEX);
+    }
+
+    @Test
+    public void composeAsyncOperations() throws Exception {
+        List<IndexKey> keys = indexer.bulkIndexAsync(tradesBundling()).get();
+        assertEquals(keys.size(), 20);
+
+        CompletableFuture<QueryResponse> search = query.searchAsync(queryBuilder().index(ASYNC_INDEX).size(50)
+           .build(), null, IndexKeyBuilder);
+        CompletableFuture<List<SimpleDoc>> docs = query.findAllAsync(asList(keys.get(0), keys.get(1),
+           keyWith(ASYNC_INDEX, TRADE_TYPE, "trades:025")), SimpleDocBuilder);
+        CompletableFuture<Aggregation> aggregation = query.aggregateAsync(sum(FieldValue, FieldValue), ASYNC_INDEX);
+        CompletableFuture.allOf(search, docs, aggregation).get();
+
+        assertEquals(search.get().header.totalHits, 20L);
+        assertEquals(docs.get().size(), 2);
+        assertEquals(aggregation.get().doubleValue(Sum.name()), 447.0);
+    }
+
+    @Test
+    public void asyncPathsHonourWrapperSettings() throws Exception {
+        assertNull(indexer.indexAsync(new BulkRequest()).get());
+
+        AdaptiveBatcher batcher = batcherBuilder().minSize(2).initialSize(4).latencyTargetMillis(60000).build();
+        List<IndexKey> keys = indexer.withAdaptiveBatcher(batcher).withRefreshPolicy(waitUntilVisible(5000))
+           .bulkIndexAsync(tradesBundling()).get();
+        assertEquals(keys.size(), 20);
+        assertTrue(batcher.throughput() > 0);
+
+        DocCache cache = cacheBuilder().build();
+        QueryWrapper cached = query.withDocCache(cache).withMultiGetChunkSize(3);
+        assertEquals(cached.findAllAsync(keys, SimpleDocBuilder).get().size(), 20);
+        assertEquals(cached.findAllAsync(keys, SimpleDocBuilder).get().size(), 20);
+        assertEquals(cache.hitCount(), 20);
+    }
+
+    @Test
+    public void asyncQueriesAreMetered() throws Exception {
+        indexer.withRefreshPolicy(waitUntilVisible(5000)).bulkIndexAsync(tradesBundling()).get();
+        HistogramMetrics metrics = new HistogramMetrics();
+        QueryWrapper metered = query.withMetrics(metrics);
+        assertEquals(metered.searchAsync(queryBuilder().index(ASYNC_INDEX).type(TRADE_TYPE).size(50).build(), null,
+           IndexKeyBuilder).get().header.totalHits, 20L);
+        metered.aggregateAsync(sum(FieldValue, FieldValue), ASYNC_INDEX).get();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            QueryWrapper executed = metered.withExecution(executionBuilder(executor).perIndexLimit(1).build());
+            assertEquals(executed.aggregateAsync(sum(FieldValue, FieldValue), ASYNC_INDEX).get()
+               .doubleValue(Sum.name()), 447.0);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        HistogramMetrics.Stats search = metrics.stats("search", ASYNC_INDEX, TRADE_TYPE);
+        assertEquals(search.latency.count(), 1);
+        assertEquals(search.items(), 20);
+        assertTrue(search.requestBytes() > 0);
+        assertEquals(metrics.stats("aggregate", ASYNC_INDEX, null).latency.count(), 2);
+    }
+
+    private static Bundling tradesBundling() {
+        Bundling.Builder builder = bundlingBuilder().timestamp(1425494500000L).user("tester");
+        for (Trade trade : sampleTrades())
+            builder.record(createRecord(keyWith(ASYNC_INDEX, TRADE_TYPE, trade.address), GSON.toJson(trade)));
+        return builder.build();
+    }
+}
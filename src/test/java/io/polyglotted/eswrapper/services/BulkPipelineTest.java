@@ -0,0 +1,116 @@
+package io.polyglotted.eswrapper.services;
+
+import io.polyglotted.eswrapper.AbstractElasticTest;
+import io.polyglotted.eswrapper.indexing.IndexRecord;
+import io.polyglotted.pgmodel.search.IndexKey;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+
+import static io.polyglotted.eswrapper.indexing.IgnoreErrors.lenient;
+import static io.polyglotted.eswrapper.indexing.IndexRecord.createRecord;
+import static io.polyglotted.eswrapper.indexing.IndexRecord.overwriteRecord;
+import static io.polyglotted.eswrapper.indexing.IndexSerializer.GSON;
+import static io.polyglotted.eswrapper.indexing.IndexSetting.settingBuilder;
+import static io.polyglotted.eswrapper.services.DocCache.cacheBuilder;
+import static io.polyglotted.eswrapper.services.Trade.TRADE_TYPE;
+import static io.polyglotted.eswrapper.services.Trade.sampleTrades;
+import static io.polyglotted.eswrapper.services.Trade.trade;
+import static io.polyglotted.pgmodel.search.IndexKey.keyWith;
+import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class BulkPipelineTest extends AbstractElasticTest {
+    private static final String PIPELINE_INDEX = "pipeline_index";
+    private static final long T1 = 1425494500000L;
+
+    @Override
+    protected void performSetup() {
+        admin.dropIndex(PIPELINE_INDEX);
+        admin.createIndex(settingBuilder(3, 0).build(), PIPELINE_INDEX);
+    }
+
+    @Test
+    public void submitInBatches() throws Exception {
+        List<CompletableFuture<IndexKey>> futures = new ArrayList<>();
+        try (BulkPipeline pipeline = indexer.bulkPipeline().maxActions(3).maxInFlight(1).build()) {
+            for (Trade trade : sampleTrades()) futures.add(pipeline.submit(tradeRecord(trade), T1, "tester"));
+        }
+        admin.forceRefresh(PIPELINE_INDEX);
+
+        for (int i = 0; i < futures.size(); i++) {
+            IndexKey key = futures.get(i).get();
+            assertEquals(key.id, sampleTrades().get(i).address);
+            assertEquals(key.version, T1);
+        }
+        assertEquals(query.findAll(transformKeys(sampleTrades())).size(), 20);
+    }
+
+    @Test
+    public void submitFailsPerRecord() throws Exception {
+        Trade trade = trade("trades:001", "EMEA", "UK", "London", "IEU", "Alex", 1425427200000L, 20.0);
+        try (BulkPipeline pipeline = indexer.bulkPipeline().build()) {
+            pipeline.submit(tradeRecord(trade), T1, "tester");
+        }
+
+        CompletableFuture<IndexKey> strictFuture;
+        try (BulkPipeline pipeline = indexer.bulkPipeline().build()) {
+            strictFuture = pipeline.submit(tradeRecord(trade), T1 + 1, "tester");
+        }
+        try {
+            strictFuture.get();
+            fail();
+        } catch (ExecutionException ee) {
+            assertTrue(ee.getCause() instanceof IndexerException);
+        }
+
+        CompletableFuture<IndexKey> lenientFuture;
+        try (BulkPipeline pipeline = indexer.bulkPipeline().ignoreErrors(lenient()).build()) {
+            lenientFuture = pipeline.submit(tradeRecord(trade), T1 + 2, "tester");
+        }
+        assertEquals(lenientFuture.get().id, trade.address);
+    }
+
+    @Test
+    public void submitThroughWrapperSettings() throws Exception {
+        DocCache cache = cacheBuilder().build();
+        List<String> operations = new CopyOnWriteArrayList<>();
+        IndexerWrapper wrapped = indexer.withDocCache(cache).withMetrics((operation, index, type, tookNanos, items,
+           requestBytes, responseBytes, failure) -> operations.add(operation));
+        QueryWrapper cached = query.withDocCache(cache);
+
+        try (BulkPipeline pipeline = wrapped.bulkPipeline().build()) {
+            pipeline.submit(tradeRecord(tradeBy("Alex")), T1, "tester");
+        }
+        assertEquals(cached.findBy(keyWith(PIPELINE_INDEX, TRADE_TYPE, "trades:001")).source.get("trader"), "Alex");
+        assertEquals(cache.size(), 1);
+
+        try (BulkPipeline pipeline = wrapped.bulkPipeline().build()) {
+            pipeline.submit(overwriteRecord(keyWith(PIPELINE_INDEX, TRADE_TYPE, "trades:001"), GSON.toJson(tradeBy("Zoe"))),
+               T1 + 1, "tester");
+        }
+        assertEquals(cache.size(), 0);
+        assertEquals(cached.findBy(keyWith(PIPELINE_INDEX, TRADE_TYPE, "trades:001")).source.get("trader"), "Zoe");
+        assertEquals(operations, asList("bulk", "bulk"));
+    }
+
+    private static Trade tradeBy(String trader) {
+        return trade("trades:001", "EMEA", "UK", "London", "IEU", trader, 1425427200000L, 20.0);
+    }
+
+    private static IndexRecord tradeRecord(Trade trade) {
+        return createRecord(keyWith(PIPELINE_INDEX, TRADE_TYPE, trade.address), GSON.toJson(trade));
+    }
+
+    private static List<IndexKey> transformKeys(List<Trade> trades) {
+        List<IndexKey> keys = new ArrayList<>();
+        for (Trade trade : trades) keys.add(keyWith(PIPELINE_INDEX, TRADE_TYPE, trade.address));
+        return keys;
+    }
+}
@@ -0,0 +1,77 @@
+package io.polyglotted.eswrapper.services;
+
+import io.polyglotted.eswrapper.AbstractElasticTest;
+import io.polyglotted.pgmodel.search.IndexKey;
+import io.polyglotted.pgmodel.search.SimpleDoc;
+import org.elasticsearch.action.index.IndexRequest;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static io.polyglotted.eswrapper.indexing.IndexSerializer.GSON;
+import static io.polyglotted.eswrapper.indexing.IndexSetting.settingBuilder;
+import static io.polyglotted.eswrapper.services.DocCache.cacheBuilder;
+import static io.polyglotted.eswrapper.services.Trade.TRADE_TYPE;
+import static io.polyglotted.eswrapper.services.Trade.trade;
+import static io.polyglotted.eswrapper.services.Trade.tradesRequest;
+import static io.polyglotted.pgmodel.search.IndexKey.keyWith;
+import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class DocCacheTest extends AbstractElasticTest {
+    private static final String CACHE_INDEX = "doc_cache";
+
+    @Override
+    protected void performSetup() {
+        admin.dropIndex(CACHE_INDEX);
+        admin.createIndex(settingBuilder(3, 0).build(), CACHE_INDEX);
+        indexer.index(tradesRequest(CACHE_INDEX, 1));
+    }
+
+    @Test
+    public void findByReadsThrough() {
+        DocCache cache = cacheBuilder().maximumSize(100).build();
+        QueryWrapper cached = query.withDocCache(cache);
+
+        SimpleDoc first = cached.findBy(key("trades:001"));
+        SimpleDoc second = cached.findBy(key("trades:001"));
+        assertEquals(second.source, first.source);
+        assertNull(cached.findBy(key("trades:999")));
+        assertEquals(cache.hitCount(), 1);
+        assertEquals(cache.missCount(), 2);
+        assertEquals(cache.size(), 1);
+    }
+
+    @Test
+    public void findAllFetchesOnlyMisses() {
+        DocCache cache = cacheBuilder().maximumWeight(1 << 20).ttlMillis(60000).build();
+        QueryWrapper cached = query.withDocCache(cache);
+        cached.findBy(key("trades:002"));
+
+        List<SimpleDoc> docs = cached.findAll(asList(key("trades:001"), key("trades:002"),
+           key("trades:999"), key("trades:003")));
+        assertEquals(docs.size(), 3);
+        assertEquals(docs.get(0).key.id, "trades:001");
+        assertEquals(docs.get(1).key.id, "trades:002");
+        assertEquals(docs.get(2).key.id, "trades:003");
+        assertEquals(cache.hitCount(), 1);
+        assertEquals(cache.missCount(), 4);
+        assertEquals(cache.size(), 3);
+    }
+
+    @Test
+    public void writesInvalidateCache() {
+        DocCache cache = cacheBuilder().build();
+        QueryWrapper cached = query.withDocCache(cache);
+        IndexerWrapper cachingIndexer = indexer.withDocCache(cache);
+        assertEquals(cached.findBy(key("trades:001")).source.get("trader"), "Alex");
+
+        cachingIndexer.index(new IndexRequest(CACHE_INDEX, TRADE_TYPE, "trades:001").refresh(true).source(GSON.toJson(
+           trade("trades:001", "EMEA", "UK", "London", "IEU", "Zoe", 1425427200000L, 20.0))));
+        assertEquals(cache.size(), 0);
+        assertEquals(cached.findBy(key("trades:001")).source.get("trader"), "Zoe");
+    }
+
+    private static IndexKey key(String id) { return keyWith(CACHE_INDEX, TRADE_TYPE, id); }
+}
@@ -0,0 +1,82 @@
+package io.polyglotted.eswrapper.services;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.polyglotted.eswrapper.services.Execution.currentOperation;
+import static io.polyglotted.eswrapper.services.Execution.executionBuilder;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class ExecutionTest {
+
+    @Test
+    public void limitsConcurrencyPerIndex() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            Execution execution = executionBuilder(executor).perIndexLimit(2).build();
+            AtomicInteger active = new AtomicInteger();
+            AtomicInteger peak = new AtomicInteger();
+            List<CompletableFuture<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                futures.add(execution.submit("search", new String[]{"trades"}, () -> {
+                    peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+                    sleep(50);
+                    return active.decrementAndGet();
+                }));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).get();
+            assertEquals(peak.get(), 2);
+            assertEquals(execution.availablePermits("trades"), 2);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void tagsThreadWhileBlocked() {
+        Execution execution = executionBuilder(Runnable::run).build();
+        String name = Thread.currentThread().getName();
+        String tagged = execution.call("bulk", new String[]{"a", "b"}, () -> {
+            assertEquals(currentOperation(), "es:bulk[a, b]");
+            return Thread.currentThread().getName();
+        });
+        assertTrue(tagged.endsWith(" [es:bulk[a, b]]"), tagged);
+        assertEquals(Thread.currentThread().getName(), name);
+        assertNull(currentOperation());
+    }
+
+    @Test(timeOut = 5000)
+    public void blockingCallsRunOnExecutor() {
+        ExecutorService executor = Executors.newSingleThreadExecutor(
+           new ThreadFactoryBuilder().setNameFormat("es-io-%d").build());
+        try {
+            Execution execution = executionBuilder(executor).perIndexLimit(1).build();
+            String outer = execution.call("search", new String[]{"trades"}, () -> {
+                String inner = execution.call("get", new String[]{"trades"}, () -> Thread.currentThread().getName());
+                assertEquals(currentOperation(), "es:search[trades]");
+                return inner;
+            });
+            assertTrue(outer.startsWith("es-io-0 [es:search[trades]]"), outer);
+            assertEquals(execution.availablePermits("trades"), 1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
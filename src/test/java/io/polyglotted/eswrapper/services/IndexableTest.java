@@ -8,22 +8,28 @@ import io.polyglotted.eswrapper.AbstractElasticTest;
 import io.polyglotted.eswrapper.indexing.IndexRecord;
 import io.polyglotted.eswrapper.indexing.IndexSetting;
 import io.polyglotted.eswrapper.indexing.Indexable;
+import io.polyglotted.eswrapper.services.LockService.Lease;
 import io.polyglotted.eswrapper.services.VersionValidator.StandardValidator;
 import io.polyglotted.pgmodel.search.IndexKey;
 import io.polyglotted.pgmodel.search.SimpleDoc;
 import io.polyglotted.pgmodel.search.Sleeve;
 import io.polyglotted.pgmodel.search.index.FieldType;
 import io.polyglotted.pgmodel.search.query.Expression;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.index.IndexRequest;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.google.common.collect.ImmutableList.of;
 import static com.google.common.collect.Iterables.toArray;
 import static com.google.common.collect.Iterables.transform;
 import static com.google.common.collect.Maps.uniqueIndex;
+import static com.google.common.util.concurrent.Uninterruptibles.sleepUninterruptibly;
 import static io.polyglotted.eswrapper.indexing.IndexRecord.createRecord;
 import static io.polyglotted.eswrapper.indexing.IndexRecord.fromSleeve;
 import static io.polyglotted.eswrapper.indexing.IndexRecord.overwriteRecord;
@@ -31,11 +37,14 @@ import static io.polyglotted.eswrapper.indexing.IndexSerializer.GSON;
 import static io.polyglotted.eswrapper.indexing.Indexable.indexableBuilder;
 import static io.polyglotted.eswrapper.indexing.TypeMapping.typeBuilder;
 import static io.polyglotted.eswrapper.query.ResultBuilder.SimpleDocBuilder;
+import static io.polyglotted.eswrapper.services.LockService.keyLocks;
 import static io.polyglotted.eswrapper.services.Trade.FieldDate;
+import static io.polyglotted.eswrapper.services.Trade.FieldValue;
 import static io.polyglotted.eswrapper.services.Trade.TRADE_TYPE;
 import static io.polyglotted.eswrapper.services.Trade.sampleTrades;
 import static io.polyglotted.eswrapper.services.Trade.trade;
 import static io.polyglotted.eswrapper.services.VersionValidator.OVERWRITE_VALIDATOR;
+import static io.polyglotted.eswrapper.services.VersionValidator.STANDARD_VALIDATOR;
 import static io.polyglotted.pgmodel.search.DocStatus.DELETED;
 import static io.polyglotted.pgmodel.search.DocStatus.EXPIRED;
 import static io.polyglotted.pgmodel.search.IndexKey.keyFrom;
@@ -51,6 +60,7 @@ import static io.polyglotted.pgmodel.search.query.Expressions.archiveIndex;
 import static io.polyglotted.pgmodel.search.query.Expressions.ids;
 import static io.polyglotted.pgmodel.search.query.Expressions.liveIndex;
 import static io.polyglotted.pgmodel.search.query.StandardQuery.queryBuilder;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
@@ -63,6 +73,7 @@ public class IndexableTest extends AbstractElasticTest {
     private static final String ARCHIVE_ALIAS = "indexable_index.archive";
     private static final long T1 = 1442784057000L;
     private static final long T2 = 1442784062000L;
+    private static final long T3 = 1442784067000L;
 
     @Override
     protected void performSetup() {
@@ -161,6 +172,95 @@ public class IndexableTest extends AbstractElasticTest {
         assertThat(fetchRecords(query, ARCHIVE_ALIAS).size(), is(1));
     }
 
+    @Test
+    public void lostLeaseRefusesWrites() {
+        indexer.twoPhaseCommit(indexable(createSleeves(sampleTrades(), newSleeveFunction(LIVE_ALIAS, TRADE_TYPE)), T1));
+        Indexable update = indexable(of(Sleeve.create(keyFrom(LIVE_ALIAS, TRADE_TYPE, "trades:005", T1),
+           trade("trades:005", "EMEA", "UK", "London", "LME", "Chandler", 1425427200000L, 30.0))), T2);
+        LockService taker = keyLocks(60000);
+        List<Lease> taken = new ArrayList<>();
+        IndexerWrapper stalled = indexer.withLockService(keyLocks(100)).withMetrics((operation, index, type, tookNanos,
+           items, requestBytes, responseBytes, failure) -> {
+            if (!"commit-archive".equals(operation)) return;
+            sleepUninterruptibly(200, MILLISECONDS);
+            taken.add(taker.acquire(client, update.unaryIndex, update.keys()));
+        });
+        try {
+            stalled.twoPhaseCommit(update);
+            fail();
+
+        } catch (IllegalStateException ise) {
+            assertThat(ise.getMessage(), startsWith("lost lock"));
+        }
+        taker.release(client, taken.get(0));
+        assertThat(fetchRecords(query, ARCHIVE_ALIAS).size(), is(0));
+        assertThat(query.findBy(keyWith(INDEXABLE_INDEX, TRADE_TYPE, "trades:005")).key.version, is(T1));
+    }
+
+    @Test
+    public void optimisticUpdateRecords() {
+        indexer.optimisticCommit(indexable(createSleeves(sampleTrades(), newSleeveFunction(LIVE_ALIAS, TRADE_TYPE)), T1));
+
+        List<Sleeve<Trade>> mutations = Lists.newArrayList();
+        mutations.addAll(createSleeves(of(trade("trades:021", "EMEA", "UK", "London", "IEU", "Andrew", 1425427200000L,
+           40.0)), newSleeveFunction(LIVE_ALIAS, TRADE_TYPE)));
+        mutations.add(Sleeve.create(keyFrom(LIVE_ALIAS, TRADE_TYPE, "trades:005", T1),
+           trade("trades:005", "EMEA", "UK", "London", "LME", "Chandler", 1425427200000L, 30.0)));
+        Iterables.addAll(mutations, of(Sleeve.delete(keyFrom(LIVE_ALIAS, TRADE_TYPE, "trades:019", T1))));
+        indexer.optimisticCommit(indexable(mutations, T2));
+
+        assertThat(fetchRecords(query, LIVE_ALIAS).size(), is(20));
+        assertThat(fetchRecords(query, ARCHIVE_ALIAS).size(), is(2));
+        assertHistory(of(keyFrom(INDEXABLE_INDEX, TRADE_TYPE, "trades:005", T1)), T1, EXPIRED.name(), T2);
+        assertHistory(of(keyFrom(INDEXABLE_INDEX, TRADE_TYPE, "trades:019", T1)), T1, DELETED.name(), T2);
+    }
+
+    @Test
+    public void optimisticConflictRollsBack() {
+        indexer.optimisticCommit(indexable(createSleeves(sampleTrades(), newSleeveFunction(LIVE_ALIAS, TRADE_TYPE)), T1));
+        IndexKey contended = keyFrom(INDEXABLE_INDEX, TRADE_TYPE, "trades:005", T1);
+        indexer.index(new IndexRequest(INDEXABLE_INDEX, TRADE_TYPE, contended.uniqueId()).source("{}"));
+
+        List<Sleeve<Trade>> mutations = of(Sleeve.create(keyFrom(LIVE_ALIAS, TRADE_TYPE, "trades:005", T1),
+              trade("trades:005", "EMEA", "UK", "London", "LME", "Chandler", 1425427200000L, 30.0)),
+           Sleeve.create(keyFrom(LIVE_ALIAS, TRADE_TYPE, "trades:006", T1),
+              trade("trades:006", "EMEA", "UK", "London", "LME", "Chandler", 1425427200000L, 30.0)));
+        try {
+            indexer.optimisticCommit(indexable(mutations, T2), STANDARD_VALIDATOR, 2);
+            fail();
+
+        } catch (IndexerException ie) {
+            Map<IndexKey, String> errorsMap = checkAssertValidity(ie);
+            assertThat(errorsMap.get(mutations.get(0).key), equalTo("version conflict for update"));
+        }
+        IndexKey untouched = keyFrom(INDEXABLE_INDEX, TRADE_TYPE, "trades:006", T1);
+        assertThat(query.findBy(keyWith(INDEXABLE_INDEX, TRADE_TYPE, untouched.uniqueId())) == null, is(true));
+        assertThat(query.findBy(keyWith(INDEXABLE_INDEX, TRADE_TYPE, "trades:006")).key.version, is(T1));
+    }
+
+    @Test
+    public void optimisticRetryRebasesOnWinner() {
+        indexer.optimisticCommit(indexable(createSleeves(sampleTrades(), newSleeveFunction(LIVE_ALIAS, TRADE_TYPE)), T1));
+        List<Sleeve<Trade>> winner = of(Sleeve.create(keyFrom(LIVE_ALIAS, TRADE_TYPE, "trades:005", T1),
+           trade("trades:005", "EMEA", "UK", "London", "LME", "Chandler", 1425427200000L, 25.0)));
+        AtomicBoolean raced = new AtomicBoolean(false);
+        VersionValidator racing = (indexable, docs) -> {
+            BulkRequest archives = STANDARD_VALIDATOR.validate(indexable, docs);
+            if (raced.compareAndSet(false, true)) indexer.twoPhaseCommit(indexable(winner, T2));
+            return archives;
+        };
+
+        List<Sleeve<Trade>> mutations = of(Sleeve.create(keyFrom(LIVE_ALIAS, TRADE_TYPE, "trades:005", T1),
+           trade("trades:005", "EMEA", "UK", "London", "LME", "Chandler", 1425427200000L, 30.0)));
+        indexer.optimisticCommit(indexable(mutations, T3), racing, 2);
+
+        SimpleDoc current = query.findBy(keyWith(INDEXABLE_INDEX, TRADE_TYPE, "trades:005"));
+        assertThat(current.key.version, is(T3));
+        assertThat(current.source.get(FieldValue), is(30.0));
+        assertHistory(of(keyFrom(INDEXABLE_INDEX, TRADE_TYPE, "trades:005", T1)), T1, EXPIRED.name(), T2);
+        assertHistory(of(keyFrom(INDEXABLE_INDEX, TRADE_TYPE, "trades:005", T2)), T2, EXPIRED.name(), T3);
+    }
+
     @Test
     public void updateWithoutCreateShouldFail() {
         List<Sleeve<Trade>> update1 = of(Sleeve.create(keyFrom(LIVE_ALIAS, TRADE_TYPE, "trades:005", T1),
@@ -4,6 +4,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import io.polyglotted.eswrapper.AbstractElasticTest;
 import io.polyglotted.eswrapper.indexing.IgnoreErrors;
+import io.polyglotted.eswrapper.indexing.Indexable;
 import io.polyglotted.pgmodel.search.IndexKey;
 import io.polyglotted.pgmodel.search.SimpleDoc;
 import io.polyglotted.pgmodel.search.query.QueryResponse;
@@ -19,11 +20,14 @@ import org.testng.annotations.Test;
 import java.util.List;
 
 import static com.google.common.collect.Iterables.transform;
+import static io.polyglotted.eswrapper.indexing.IndexRecord.createRecord;
 import static io.polyglotted.eswrapper.indexing.IndexSerializer.GSON;
 import static io.polyglotted.eswrapper.indexing.IndexSetting.settingBuilder;
+import static io.polyglotted.eswrapper.indexing.Indexable.indexableBuilder;
 import static io.polyglotted.eswrapper.indexing.TypeMapping.typeBuilder;
 import static io.polyglotted.eswrapper.query.QueryBuilder.idRequest;
 import static io.polyglotted.eswrapper.query.ResultBuilder.IndexKeyBuilder;
+import static io.polyglotted.eswrapper.services.LockService.keyLocks;
 import static io.polyglotted.eswrapper.services.Trade.TRADE_TYPE;
 import static io.polyglotted.eswrapper.services.Trade.trade;
 import static io.polyglotted.eswrapper.services.Trade.tradeFromMap;
@@ -146,8 +150,28 @@ public class IndexerWrapperTest extends AbstractElasticTest {
             fail();
 
         } catch (IllegalStateException ise) {
+            assertEquals(ise.getMessage(), "unable to lock the index " + TRADES_INDEX);
             indexer.unlockIndex(TRADES_INDEX);
         }
-        admin.forceRefresh(TRADES_INDEX);
+        indexer.lockTheIndexOrFail(TRADES_INDEX);
+        indexer.unlockIndex(TRADES_INDEX);
+    }
+
+    @Test
+    public void indexLockBlocksKeyLockedCommits() {
+        IndexerWrapper keyLocked = indexer.withLockService(keyLocks(60000));
+        Trade trade = trade("trades:001", "EMEA", "UK", "London", "IEU", "Alex", 1425427200000L, 20.0);
+        Indexable indexable = indexableBuilder().timestamp(1425494500000L).user("tester")
+           .records(createRecord(keyWith(TRADES_INDEX, TRADE_TYPE, trade.address), GSON.toJson(trade))).build();
+
+        keyLocked.lockTheIndexOrFail(TRADES_INDEX);
+        try {
+            keyLocked.twoPhaseCommit(indexable);
+            fail();
+        } catch (IllegalStateException ise) {
+            assertTrue(ise.getMessage().contains("locked index " + TRADES_INDEX), ise.getMessage());
+        }
+        keyLocked.unlockIndex(TRADES_INDEX);
+        assertEquals(keyLocked.twoPhaseCommit(indexable).size(), 1);
     }
 }
@@ -0,0 +1,271 @@
+package io.polyglotted.eswrapper.services;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import io.polyglotted.eswrapper.AbstractElasticTest;
+import io.polyglotted.eswrapper.indexing.Bundling;
+import io.polyglotted.eswrapper.indexing.IndexRecord;
+import io.polyglotted.eswrapper.indexing.Indexable;
+import io.polyglotted.eswrapper.metrics.HistogramMetrics;
+import io.polyglotted.eswrapper.metrics.LatencyHistogram;
+import io.polyglotted.eswrapper.metrics.OperationMetrics;
+import io.polyglotted.pgmodel.search.IndexKey;
+import io.polyglotted.pgmodel.search.index.FieldType;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import static io.polyglotted.eswrapper.indexing.Bundling.bundlingBuilder;
+import static io.polyglotted.eswrapper.indexing.IndexRecord.overwriteRecord;
+import static io.polyglotted.eswrapper.indexing.IndexSerializer.GSON;
+import static io.polyglotted.eswrapper.indexing.IndexSetting.settingBuilder;
+import static io.polyglotted.eswrapper.indexing.Indexable.indexableBuilder;
+import static io.polyglotted.eswrapper.indexing.TypeMapping.typeBuilder;
+import static io.polyglotted.eswrapper.query.QueryBuilder.queryToRequest;
+import static io.polyglotted.eswrapper.query.ResultBuilder.IndexKeyBuilder;
+import static io.polyglotted.eswrapper.query.ResultBuilder.SimpleDocBuilder;
+import static io.polyglotted.eswrapper.services.Trade.FieldDate;
+import static io.polyglotted.eswrapper.services.Trade.FieldRegion;
+import static io.polyglotted.eswrapper.services.Trade.FieldValue;
+import static io.polyglotted.eswrapper.services.Trade.TRADE_TYPE;
+import static io.polyglotted.eswrapper.services.Trade.trade;
+import static io.polyglotted.eswrapper.services.VersionValidator.OVERWRITE_VALIDATOR;
+import static io.polyglotted.pgmodel.search.IndexKey.keyWith;
+import static io.polyglotted.pgmodel.search.index.FieldMapping.notAnalyzedField;
+import static io.polyglotted.pgmodel.search.index.FieldMapping.notAnalyzedStringField;
+import static io.polyglotted.pgmodel.search.query.Expressions.equalsTo;
+import static io.polyglotted.pgmodel.search.query.StandardQuery.queryBuilder;
+import static java.lang.Integer.getInteger;
+import static java.lang.Long.getLong;
+
+/**
+ * Mixed-workload load harness against the embedded node, skipped unless run with -Dload.harness=true.
+ * Tunables: load.threads, load.seconds, load.warmup, load.docs, load.hotKeys, load.batch, load.seed, load.label
+ * and load.mix (e.g. "bulkIndex=20,twoPhaseCommit=10,findAll=30,search=30,scroll=10"). Each run is logged and
+ * written as tab-separated values under target/load-harness so before/after runs can be diffed.
+ */
+@Slf4j
+public class LoadHarnessTest extends AbstractElasticTest {
+    private static final String LOAD_INDEX = "load_harness_index";
+    private static final String[] REGIONS = {"EMEA", "NA", "SA", "APAC"};
+    private static final String DEFAULT_MIX = "bulkIndex=20,twoPhaseCommit=10,findAll=30,search=30,scroll=10";
+
+    enum Operation {bulkIndex, twoPhaseCommit, findAll, search, scroll}
+
+    private final int threads = getInteger("load.threads", 8);
+    private final long seconds = getLong("load.seconds", 30L);
+    private final long warmup = getLong("load.warmup", 5L);
+    private final int docs = getInteger("load.docs", 10000);
+    private final int hotKeys = getInteger("load.hotKeys", 100);
+    private final int batch = getInteger("load.batch", 100);
+    private final long seed = getLong("load.seed", 42L);
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+    private final Map<Operation, Tally> tallies = new EnumMap<>(Operation.class);
+    private volatile boolean recording;
+
+    @Test
+    public void runMixedLoad() throws Exception {
+        if (!Boolean.getBoolean("load.harness")) throw new SkipException("load harness disabled");
+        Map<Operation, Integer> mix = parseMix(System.getProperty("load.mix", DEFAULT_MIX));
+        for (Operation operation : Operation.values()) tallies.put(operation, new Tally());
+        HistogramMetrics metrics = new HistogramMetrics();
+        OperationMetrics afterWarmup = (operation, index, type, tookNanos, items, requestBytes, responseBytes,
+                                        failure) -> {
+            if (recording) metrics.record(operation, index, type, tookNanos, items, requestBytes, responseBytes, failure);
+        };
+        IndexerWrapper loadIndexer = indexer.withMetrics(afterWarmup);
+        QueryWrapper loadQuery = query.withMetrics(afterWarmup);
+        seedIndex();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmup + seconds);
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(seed + t);
+            executor.execute(() -> {
+                try {
+                    while (System.nanoTime() < deadline) execute(pick(mix, random), random, loadIndexer, loadQuery);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        TimeUnit.SECONDS.sleep(warmup);
+        recording = true;
+        long started = System.nanoTime();
+        done.await();
+        double elapsed = (System.nanoTime() - started) / 1e9;
+        executor.shutdown();
+
+        report(mix, elapsed, metrics);
+    }
+
+    private void execute(Operation operation, Random random, IndexerWrapper loadIndexer, QueryWrapper loadQuery) {
+        long start = System.nanoTime();
+        Throwable failure = null;
+        try {
+            switch (operation) {
+                case bulkIndex:
+                    loadIndexer.bulkIndex(bulkBundling(random));
+                    break;
+                case twoPhaseCommit:
+                    loadIndexer.twoPhaseCommit(hotIndexable(random), OVERWRITE_VALIDATOR);
+                    break;
+                case findAll:
+                    loadQuery.findAll(randomKeys(random, 20));
+                    break;
+                case search:
+                    loadQuery.search(queryBuilder().index(LOAD_INDEX).expression(equalsTo(FieldRegion,
+                       REGIONS[random.nextInt(REGIONS.length)])).size(50).build(), null, SimpleDocBuilder);
+                    break;
+                case scroll:
+                    try (Stream<IndexKey> keys = loadQuery.streamScroll(queryToRequest(queryBuilder().index(LOAD_INDEX)
+                       .expression(equalsTo(FieldRegion, REGIONS[random.nextInt(REGIONS.length)])).size(200)
+                       .scrollTimeInMillis(60000L).build(), null), IndexKeyBuilder)) {
+                        keys.limit(1000).count();
+                    }
+                    break;
+            }
+        } catch (RuntimeException ex) {
+            failure = ex;
+            log.debug("load operation " + operation + " failed: " + ex.getMessage());
+        }
+        if (recording) tallies.get(operation).record(System.nanoTime() - start, failure);
+    }
+
+    private Bundling bulkBundling(Random random) {
+        Bundling.Builder builder = bundlingBuilder().timestamp(clock.incrementAndGet()).user("load");
+        for (int i = 0; i < batch; i++) {
+            String id = "bulk:" + sequence.incrementAndGet();
+            builder.record(overwriteRecord(keyWith(LOAD_INDEX, TRADE_TYPE, id), tradeJson(id, random)));
+        }
+        return builder.build();
+    }
+
+    private Indexable hotIndexable(Random random) {
+        int size = 1 + random.nextInt(5);
+        int start = random.nextInt(hotKeys);
+        List<IndexRecord> records = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String id = "trades:" + ((start + i) % hotKeys);
+            records.add(overwriteRecord(keyWith(LOAD_INDEX, TRADE_TYPE, id), tradeJson(id, random)));
+        }
+        return indexableBuilder().timestamp(clock.incrementAndGet()).user("load").records(records).build();
+    }
+
+    private List<IndexKey> randomKeys(Random random, int count) {
+        List<IndexKey> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) keys.add(keyWith(LOAD_INDEX, TRADE_TYPE, "trades:" + random.nextInt(docs)));
+        return keys;
+    }
+
+    private void seedIndex() {
+        admin.dropIndex(LOAD_INDEX);
+        admin.createIndex(settingBuilder(3, 0).build(), LOAD_INDEX);
+        admin.createType(typeBuilder().index(LOAD_INDEX).type(TRADE_TYPE)
+           .fieldMapping(notAnalyzedStringField(FieldRegion))
+           .fieldMapping(notAnalyzedField(FieldValue, FieldType.DOUBLE))
+           .fieldMapping(notAnalyzedField(FieldDate, FieldType.DATE)).build());
+
+        Random random = new Random(seed);
+        for (int from = 0; from < docs; from += 1000) {
+            Bundling.Builder builder = bundlingBuilder().timestamp(clock.incrementAndGet()).user("load");
+            for (int i = from; i < Math.min(docs, from + 1000); i++) {
+                String id = "trades:" + i;
+                builder.record(overwriteRecord(keyWith(LOAD_INDEX, TRADE_TYPE, id), tradeJson(id, random)));
+            }
+            indexer.bulkIndex(builder.build());
+        }
+        admin.forceRefresh(LOAD_INDEX);
+    }
+
+    private static String tradeJson(String id, Random random) {
+        return GSON.toJson(trade(id, REGIONS[random.nextInt(REGIONS.length)], "UK", "London", "IEU",
+           "trader-" + random.nextInt(97), 1420070400000L + random.nextInt(365) * 86400000L,
+           random.nextInt(10000) / 100.0));
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        ImmutableMap.Builder<Operation, Integer> result = ImmutableMap.builder();
+        for (Map.Entry<String, String> entry : Splitter.on(',').trimResults().withKeyValueSeparator('=').split(mix)
+           .entrySet()) {
+            int weight = Integer.parseInt(entry.getValue().trim());
+            if (weight > 0) result.put(Operation.valueOf(entry.getKey().trim()), weight);
+        }
+        return result.build();
+    }
+
+    private static Operation pick(Map<Operation, Integer> mix, Random random) {
+        int total = 0;
+        for (int weight : mix.values()) total += weight;
+        int roll = random.nextInt(total);
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+            roll -= entry.getValue();
+            if (roll < 0) return entry.getKey();
+        }
+        throw new IllegalStateException("unreachable");
+    }
+
+    @SneakyThrows
+    private void report(Map<Operation, Integer> mix, double elapsed, HistogramMetrics metrics) {
+        String label = System.getProperty("load.label", "run");
+        File directory = new File("target", "load-harness");
+        directory.mkdirs();
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        File file = new File(directory, label + "-" + stamp + ".tsv");
+
+        log.info("load harness " + label + ": threads=" + threads + ", seconds=" + seconds + ", mix=" + mix);
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+            writer.println("operation\tcount\tops_per_sec\tp50_ms\tp99_ms\tp999_ms\tmax_ms\terrors\terror_rate");
+            for (Map.Entry<Operation, Tally> entry : tallies.entrySet()) {
+                Tally tally = entry.getValue();
+                writeRow(writer, entry.getKey().name(), tally.latency, tally.errors.sum(), elapsed);
+            }
+            for (Map.Entry<String, HistogramMetrics.Stats> entry : metrics.snapshot().entrySet()) {
+                long errors = 0;
+                for (long count : entry.getValue().errors().values()) errors += count;
+                writeRow(writer, "wrapper:" + entry.getKey(), entry.getValue().latency, errors, elapsed);
+            }
+        }
+        log.info("load harness report written to " + file);
+    }
+
+    private static void writeRow(PrintWriter writer, String name, LatencyHistogram latency, long errors,
+                                 double elapsed) {
+        long count = latency.count();
+        String row = String.format("%s\t%d\t%.1f\t%.3f\t%.3f\t%.3f\t%.3f\t%d\t%.4f", name, count, count / elapsed,
+           latency.percentile(50) / 1e6, latency.percentile(99) / 1e6, latency.percentile(99.9) / 1e6,
+           latency.max() / 1e6, errors, count == 0 ? 0.0 : (double) errors / count);
+        writer.println(row);
+        log.info(row);
+    }
+
+    private static final class Tally {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+
+        void record(long tookNanos, Throwable failure) {
+            latency.record(tookNanos);
+            if (failure != null) errors.increment();
+        }
+    }
+}
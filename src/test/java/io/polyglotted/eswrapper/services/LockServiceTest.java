@@ -0,0 +1,140 @@
+package io.polyglotted.eswrapper.services;
+
+import com.google.common.collect.ImmutableSet;
+import io.polyglotted.eswrapper.AbstractElasticTest;
+import io.polyglotted.eswrapper.services.LockService.Lease;
+import io.polyglotted.pgmodel.search.IndexKey;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static io.polyglotted.eswrapper.indexing.IndexSetting.settingBuilder;
+import static io.polyglotted.eswrapper.services.LockService.keyLocks;
+import static io.polyglotted.eswrapper.services.LockService.stripedLocks;
+import static io.polyglotted.eswrapper.services.Trade.TRADE_TYPE;
+import static io.polyglotted.pgmodel.search.IndexKey.keyWith;
+import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class LockServiceTest extends AbstractElasticTest {
+    private static final String LOCK_INDEX = "lock_index";
+
+    @Override
+    protected void performSetup() {
+        admin.dropIndex(LOCK_INDEX);
+        admin.createIndex(settingBuilder(3, 0).build(), LOCK_INDEX);
+    }
+
+    @Test
+    public void disjointKeysLockConcurrently() {
+        LockService service = keyLocks(60000);
+        Lease first = service.acquire(client, LOCK_INDEX, keys("trades:001", "trades:002"));
+        Lease second = service.acquire(client, LOCK_INDEX, keys("trades:003"));
+        assertEquals(first.versions.keySet(), ImmutableSet.of(LOCK_INDEX + "/key:Trade/trades:001",
+           LOCK_INDEX + "/key:Trade/trades:002"));
+        assertEquals(second.versions.size(), 1);
+
+        service.release(client, first);
+        service.release(client, second);
+    }
+
+    @Test
+    public void overlappingKeysFail() {
+        LockService service = keyLocks(60000);
+        Lease first = service.acquire(client, LOCK_INDEX, keys("trades:001", "trades:002"));
+        try {
+            service.acquire(client, LOCK_INDEX, keys("trades:002", "trades:003"));
+            fail();
+        } catch (IllegalStateException ise) {
+            assertTrue(ise.getMessage().contains("key:Trade/trades:002"), ise.getMessage());
+        }
+
+        Lease third = service.acquire(client, LOCK_INDEX, keys("trades:003"));
+        service.release(client, first);
+        Lease fourth = service.acquire(client, LOCK_INDEX, keys("trades:001", "trades:002"));
+        service.release(client, third);
+        service.release(client, fourth);
+    }
+
+    @Test
+    public void expiredLeaseIsTakenOver() throws Exception {
+        Lease stale = keyLocks(1).acquire(client, LOCK_INDEX, keys("trades:001"));
+        Thread.sleep(20);
+        assertTrue(stale.isExpired());
+
+        LockService service = keyLocks(60000);
+        Lease fresh = service.acquire(client, LOCK_INDEX, keys("trades:001"));
+        service.release(client, stale);
+        try {
+            service.acquire(client, LOCK_INDEX, keys("trades:001"));
+            fail();
+        } catch (IllegalStateException expected) {
+            service.release(client, fresh);
+        }
+    }
+
+    @Test
+    public void lockDocsStayOutOfDataIndex() {
+        LockService service = keyLocks(60000);
+        service.release(client, service.acquire(client, LOCK_INDEX, keys("trades:001")));
+        admin.forceRefresh(LOCK_INDEX);
+        assertEquals(client.prepareCount(LOCK_INDEX).get().getCount(), 0);
+    }
+
+    @Test
+    public void renewAdvancesVersionsUntilTakenOver() throws Exception {
+        Lease lease = keyLocks(1).acquire(client, LOCK_INDEX, keys("trades:001"));
+        Lease renewed = keyLocks(1).renew(client, lease);
+        assertTrue(renewed.versions.values().iterator().next() > lease.versions.values().iterator().next());
+        Thread.sleep(20);
+
+        LockService service = keyLocks(60000);
+        Lease taker = service.acquire(client, LOCK_INDEX, keys("trades:001"));
+        try {
+            service.renew(client, renewed);
+            fail();
+        } catch (IllegalStateException ise) {
+            assertTrue(ise.getMessage().contains("key:Trade/trades:001"), ise.getMessage());
+        }
+        service.release(client, taker);
+    }
+
+    @Test
+    public void indexLockExcludesKeyLeases() {
+        LockService service = keyLocks(60000);
+        Lease keyLease = service.acquire(client, LOCK_INDEX, keys("trades:001"));
+        try {
+            service.lockIndex(client, LOCK_INDEX);
+            fail();
+        } catch (IllegalStateException ise) {
+            assertTrue(ise.getMessage().contains("1 key locks held"), ise.getMessage());
+        }
+        service.release(client, keyLease);
+
+        service.lockIndex(client, LOCK_INDEX);
+        try {
+            service.acquire(client, LOCK_INDEX, keys("trades:002"));
+            fail();
+        } catch (IllegalStateException ise) {
+            assertTrue(ise.getMessage().contains("locked index " + LOCK_INDEX), ise.getMessage());
+        }
+        service.unlockIndex(client, LOCK_INDEX);
+        service.release(client, service.acquire(client, LOCK_INDEX, keys("trades:002")));
+    }
+
+    @Test
+    public void stripedLockIds() {
+        LockService service = stripedLocks(60000, 4);
+        assertTrue(service.lockIds(LOCK_INDEX, keys("trades:001", "trades:002", "trades:003", "trades:004", "trades:005",
+           "trades:006")).size() <= 4);
+        assertEquals(service.lockIds(LOCK_INDEX, keys("")).size(), 0);
+    }
+
+    private static List<IndexKey> keys(String... ids) {
+        IndexKey[] keys = new IndexKey[ids.length];
+        for (int i = 0; i < ids.length; i++) keys[i] = keyWith(LOCK_INDEX, TRADE_TYPE, ids[i]);
+        return asList(keys);
+    }
+}
@@ -0,0 +1,72 @@
+package io.polyglotted.eswrapper.services;
+
+import io.polyglotted.eswrapper.AbstractElasticTest;
+import io.polyglotted.pgmodel.search.IndexKey;
+import org.testng.annotations.Test;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static io.polyglotted.eswrapper.indexing.IndexSetting.settingBuilder;
+import static io.polyglotted.eswrapper.query.ResultBuilder.IndexKeyBuilder;
+import static io.polyglotted.eswrapper.services.ParallelScroll.numberOfShards;
+import static io.polyglotted.eswrapper.services.ParallelScroll.shardPreference;
+import static io.polyglotted.eswrapper.services.Trade.tradesRequest;
+import static io.polyglotted.pgmodel.search.query.StandardQuery.queryBuilder;
+import static java.util.stream.Collectors.toSet;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class ParallelScrollTest extends AbstractElasticTest {
+    private static final String PARALLEL_INDEX = "parallel_index";
+    private static final String NARROW_INDEX = "narrow_index";
+
+    @Override
+    protected void performSetup() {
+        admin.dropIndex(PARALLEL_INDEX, NARROW_INDEX);
+        admin.createIndex(settingBuilder(3, 0).build(), PARALLEL_INDEX);
+        admin.createIndex(settingBuilder(2, 0).build(), NARROW_INDEX);
+        indexer.index(tradesRequest(PARALLEL_INDEX, System.currentTimeMillis()));
+    }
+
+    @Test
+    public void scrollAllShards() {
+        assertEquals(numberOfShards(client, PARALLEL_INDEX), 3);
+        try (Stream<IndexKey> keys = query.parallelScroll(queryBuilder().index(PARALLEL_INDEX).size(4).build(),
+           IndexKeyBuilder, 5)) {
+            Set<String> ids = keys.map(key -> key.id).collect(toSet());
+            assertEquals(ids.size(), 20);
+        }
+    }
+
+    @Test
+    public void scrollWithCappedParallelism() {
+        try (Stream<IndexKey> keys = query.parallelScroll(queryBuilder().index(PARALLEL_INDEX).size(3).build(),
+           IndexKeyBuilder, 2, 1)) {
+            Set<String> ids = keys.map(key -> key.id).collect(toSet());
+            assertEquals(ids.size(), 20);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void mixedShardCountsRejected() {
+        numberOfShards(client, PARALLEL_INDEX, NARROW_INDEX);
+    }
+
+    @Test
+    public void closeBeforeExhausted() {
+        try (Stream<IndexKey> keys = query.parallelScroll(queryBuilder().index(PARALLEL_INDEX).size(2).build(),
+           IndexKeyBuilder, 1)) {
+            Iterator<IndexKey> iterator = keys.iterator();
+            assertTrue(iterator.hasNext());
+            iterator.next();
+        }
+    }
+
+    @Test
+    public void shardPreferenceKeepsHints() {
+        assertEquals(shardPreference(2, null), "_shards:2");
+        assertEquals(shardPreference(0, "_local"), "_shards:0;_local");
+    }
+}
@@ -2,30 +2,45 @@ package io.polyglotted.eswrapper.services;
 
 import io.polyglotted.eswrapper.AbstractElasticTest;
 import io.polyglotted.eswrapper.indexing.IndexSetting;
+import io.polyglotted.eswrapper.metrics.HistogramMetrics;
 import io.polyglotted.pgmodel.search.IndexKey;
 import io.polyglotted.pgmodel.search.SimpleDoc;
 import io.polyglotted.pgmodel.search.index.FieldType;
 import io.polyglotted.pgmodel.search.query.QueryResponse;
 import io.polyglotted.pgmodel.search.query.ResponseHeader;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.index.VersionType;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import static io.polyglotted.eswrapper.indexing.IndexSerializer.GSON;
 import static io.polyglotted.eswrapper.indexing.TypeMapping.typeBuilder;
+import static io.polyglotted.eswrapper.query.FilterCache.filterCache;
 import static io.polyglotted.eswrapper.query.QueryBuilder.queryToRequest;
+import static io.polyglotted.eswrapper.query.RawResultBuilder.RawSourceBuilder;
+import static io.polyglotted.eswrapper.query.RawResultBuilder.StreamingObjectBuilder;
+import static io.polyglotted.eswrapper.query.ResultBuilder.IndexKeyBuilder;
 import static io.polyglotted.eswrapper.query.ResultBuilder.NullBuilder;
 import static io.polyglotted.eswrapper.query.ResultBuilder.SimpleDocBuilder;
 import static io.polyglotted.eswrapper.query.ResultBuilder.SimpleObjectBuilder;
 import static io.polyglotted.eswrapper.query.ResultBuilder.SourceBuilder;
+import static io.polyglotted.eswrapper.services.MultiSearch.searchBatcher;
+import static io.polyglotted.eswrapper.services.MultiSearch.searchItem;
 import static io.polyglotted.eswrapper.services.NamePath.NAMEPATH_TYPE;
 import static io.polyglotted.eswrapper.services.NamePath.pathsRequest;
 import static io.polyglotted.eswrapper.services.Nested.NESTED_TYPE;
 import static io.polyglotted.eswrapper.services.Nested.nestedRequest;
 import static io.polyglotted.eswrapper.services.Nested.nesteds;
+import static io.polyglotted.eswrapper.services.RequestCoalescer.coalescer;
 import static io.polyglotted.eswrapper.services.SortableText.SORTABLE_TYPE;
 import static io.polyglotted.eswrapper.services.SortableText.sortables;
 import static io.polyglotted.eswrapper.services.SortableText.textsRequest;
@@ -46,10 +61,13 @@ import static io.polyglotted.pgmodel.search.query.StandardQuery.queryBuilder;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotEquals;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 
 public class QueryWrapperTest extends AbstractElasticTest {
     private static final String[] DUMMY_INDICES = {"dummy1", "dummy2"};
@@ -146,6 +164,46 @@ public class QueryWrapperTest extends AbstractElasticTest {
         assertEquals(queryResponse.header, new ResponseHeader(0, 20, 20, null));
     }
 
+    @Test
+    public void testStreamScroll() {
+        indexer.index(tradesRequest(DUMMY_INDICES[0], System.currentTimeMillis()));
+        try (Stream<IndexKey> keys = query.streamScroll(queryToRequest(queryBuilder()
+           .index(DUMMY_INDICES[0]).size(3).build(), null), IndexKeyBuilder, 2)) {
+            List<String> ids = keys.map(key -> key.id).distinct().collect(toList());
+            assertEquals(ids.size(), 20);
+        }
+    }
+
+    @Test
+    public void testScrollIteratorEarlyClose() {
+        indexer.index(tradesRequest(DUMMY_INDICES[0], System.currentTimeMillis()));
+        try (ScrollIterator<IndexKey> iterator = query.scrollIterator(queryToRequest(queryBuilder()
+           .index(DUMMY_INDICES[0]).size(5).build(), null), IndexKeyBuilder, 1)) {
+            assertEquals(iterator.totalHits(), 20L);
+            for (int i = 0; i < 7; i++) assertNotNull(iterator.next());
+            assertTrue(iterator.hasNext());
+        }
+    }
+
+    @Test
+    public void testScrollIteratorHasNextAfterClose() {
+        indexer.index(tradesRequest(DUMMY_INDICES[0], System.currentTimeMillis()));
+        ScrollIterator<IndexKey> iterator = query.scrollIterator(queryToRequest(queryBuilder()
+           .index(DUMMY_INDICES[0]).size(5).build(), null), IndexKeyBuilder, 2);
+        for (int i = 0; i < 5; i++) assertNotNull(iterator.next());
+        iterator.close();
+        assertFalse(iterator.hasNext());
+        iterator.close();
+    }
+
+    @Test
+    public void testStreamScrollEmpty() {
+        try (Stream<IndexKey> keys = query.streamScroll(queryToRequest(queryBuilder()
+           .index(DUMMY_INDICES[1]).build(), null), IndexKeyBuilder)) {
+            assertEquals(keys.count(), 0L);
+        }
+    }
+
     @Test
     public void testGetAs() {
         indexer.index(tradesRequest(DUMMY_INDICES[0], System.currentTimeMillis()));
@@ -154,6 +212,74 @@ public class QueryWrapperTest extends AbstractElasticTest {
         assertNull(query.findBy(keyWith(DUMMY_INDICES[0], TRADE_TYPE, "trades:025"), SourceBuilder));
     }
 
+    @Test
+    public void testSearchWithFilterCache() {
+        indexer.index(tradesRequest(DUMMY_INDICES[0], System.currentTimeMillis()));
+        QueryWrapper cached = query.withFilterCache(filterCache(10, 2));
+        for (int i = 0; i < 3; i++) {
+            QueryResponse response = cached.search(queryBuilder().index(DUMMY_INDICES).size(20).expression(
+               equalsTo(FieldDate, 1425427200000L), equalsTo("value", 50.0)).build(), null, IndexKeyBuilder);
+            assertEquals(response.header.totalHits, 2);
+        }
+    }
+
+    @Test
+    public void testSearchAllIsolatesFailures() {
+        indexer.index(tradesRequest(DUMMY_INDICES[0], System.currentTimeMillis()));
+        List<MultiSearch.Result> results = query.searchAll(asList(
+           searchItem(queryBuilder().index(DUMMY_INDICES).size(20).build(), IndexKeyBuilder),
+           searchItem(queryBuilder().index(DUMMY_INDICES).sort(sortAsc("noSuchField")).build(), IndexKeyBuilder),
+           searchItem(queryBuilder().index(DUMMY_INDICES).expression(equalsTo("value", 50.0)).build(), IndexKeyBuilder)));
+
+        assertEquals(results.size(), 3);
+        assertEquals(results.get(0).response.header.totalHits, 20L);
+        assertTrue(results.get(1).isFailed());
+        assertEquals(results.get(2).response.header.totalHits, 2L);
+    }
+
+    @Test
+    public void testBatchedSearch() throws Exception {
+        indexer.index(tradesRequest(DUMMY_INDICES[0], System.currentTimeMillis()));
+        MultiSearch batcher = searchBatcher(client, 20, 50);
+        QueryWrapper batching = query.withSearchBatcher(batcher);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<QueryResponse>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return batching.search(queryBuilder().index(DUMMY_INDICES).expression(
+                       equalsTo(FieldDate, 1425427200000L)).build(), null, IndexKeyBuilder);
+                }));
+            }
+            start.countDown();
+            for (Future<QueryResponse> future : futures) assertEquals(future.get().header.totalHits, 6L);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(batcher.searches(), 8);
+        assertTrue(batcher.requests() < 8, "requests " + batcher.requests());
+    }
+
+    @Test
+    public void testOperationMetrics() {
+        HistogramMetrics metrics = new HistogramMetrics();
+        indexer.withMetrics(metrics).index(tradesRequest(DUMMY_INDICES[0], System.currentTimeMillis()));
+        query.withMetrics(null).findBy(keyWith(DUMMY_INDICES[0], TRADE_TYPE, "trades:001"));
+        QueryWrapper metered = query.withMetrics(metrics);
+        metered.search(queryBuilder().index(DUMMY_INDICES[0]).type(TRADE_TYPE).size(20).build(), null, IndexKeyBuilder);
+        metered.findBy(keyWith(DUMMY_INDICES[0], TRADE_TYPE, "trades:001"));
+
+        assertEquals(metrics.stats("bulk", DUMMY_INDICES[0], TRADE_TYPE).items(), 20);
+        HistogramMetrics.Stats search = metrics.stats("search", DUMMY_INDICES[0], TRADE_TYPE);
+        assertEquals(search.latency.count(), 1);
+        assertEquals(search.items(), 20);
+        assertTrue(search.requestBytes() > 0);
+        assertEquals(metrics.stats("get", DUMMY_INDICES[0], TRADE_TYPE).latency.count(), 1);
+    }
+
     @Test
     public void testFindAll() {
         indexer.index(tradesRequest(DUMMY_INDICES[0], System.currentTimeMillis()));
@@ -165,6 +291,57 @@ public class QueryWrapperTest extends AbstractElasticTest {
         assertNull(docMap.get(indexKeys.get(1)));
     }
 
+    @Test
+    public void testFindAllChunked() {
+        indexer.index(tradesRequest(DUMMY_INDICES[0], System.currentTimeMillis()));
+        indexer.index(tradesRequest(DUMMY_INDICES[1], System.currentTimeMillis()));
+        List<IndexKey> indexKeys = asList(keyWith(DUMMY_INDICES[1], TRADE_TYPE, "trades:003"),
+           keyWith(DUMMY_INDICES[0], TRADE_TYPE, "trades:002"), keyWith(DUMMY_INDICES[1], TRADE_TYPE, "trades:025"),
+           keyWith(DUMMY_INDICES[0], TRADE_TYPE, "trades:001"), keyWith(DUMMY_INDICES[1], TRADE_TYPE, "trades:004"));
+
+        List<SimpleDoc> docs = query.withMultiGetChunkSize(2).findAll(indexKeys);
+        assertEquals(docs.stream().map(doc -> doc.key.index + "/" + doc.key.id).collect(toList()),
+           asList("dummy2/trades:003", "dummy1/trades:002", "dummy1/trades:001", "dummy2/trades:004"));
+    }
+
+    @Test
+    public void testCoalescedFindBy() throws Exception {
+        indexer.index(tradesRequest(DUMMY_INDICES[0], System.currentTimeMillis()));
+        RequestCoalescer coalescer = coalescer(client, 20, 100);
+        QueryWrapper coalescing = query.withRequestCoalescer(coalescer);
+        String[] ids = {"trades:001", "trades:002", "trades:025"};
+
+        ExecutorService executor = Executors.newFixedThreadPool(12);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<SimpleDoc>> futures = new ArrayList<>();
+            for (int i = 0; i < 12; i++) {
+                String id = ids[i % ids.length];
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return coalescing.findBy(keyWith(DUMMY_INDICES[0], TRADE_TYPE, id));
+                }));
+            }
+            start.countDown();
+            for (int i = 0; i < futures.size(); i++) {
+                SimpleDoc doc = futures.get(i).get();
+                if (i % ids.length == 2) assertNull(doc);
+                else assertEquals(doc.key.id, ids[i % ids.length]);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(coalescer.lookups(), 12);
+        assertTrue(coalescer.requests() < 12, "requests " + coalescer.requests());
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "get item not exists")
+    public void testGetAllChunkedFailure() {
+        indexer.index(tradesRequest(DUMMY_INDICES[0], System.currentTimeMillis()));
+        query.withMultiGetChunkSize(1).findStrict(asList(keyWith(DUMMY_INDICES[0], TRADE_TYPE, "trades:001"),
+           keyWith(DUMMY_INDICES[0], TRADE_TYPE, "trades:025")));
+    }
+
     @Test(expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "get item not exists")
     public void testGetAllFailure() {
         query.findStrict(singletonList(keyWith(DUMMY_INDICES[0], TRADE_TYPE, "trades:001")));
@@ -180,4 +357,28 @@ public class QueryWrapperTest extends AbstractElasticTest {
         Trade actual = query.findBy(keyWith(DUMMY_INDICES[0], TRADE_TYPE, trade.address), Trade::tradeFromMap);
         assertEquals(actual, trade);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testStreamingObjectBuilder() {
+        Trade trade = trade("trades:001", "EMEA", "UK", "London", "IEU", "Alex", 1425427200000L, 20.0);
+        indexer.index(new IndexRequest(DUMMY_INDICES[0], TRADE_TYPE, trade.address).refresh(true)
+           .source(GSON.toJson(trade)));
+
+        Trade actual = query.findBy(keyWith(DUMMY_INDICES[0], TRADE_TYPE, trade.address),
+           StreamingObjectBuilder(GSON, Trade.class));
+        assertEquals(actual, trade);
+
+        List<Trade> trades = query.search(queryBuilder().index(DUMMY_INDICES[0]).build(), null,
+           StreamingObjectBuilder(GSON, Trade.class)).resultsAs(Trade.class);
+        assertEquals(trades, singletonList(trade));
+    }
+
+    @Test
+    public void testRawSourceBuilder() {
+        Trade trade = trade("trades:001", "EMEA", "UK", "London", "IEU", "Alex", 1425427200000L, 20.0);
+        indexer.index(new IndexRequest(DUMMY_INDICES[0], TRADE_TYPE, trade.address).source(GSON.toJson(trade)));
+
+        BytesReference source = query.findBy(keyWith(DUMMY_INDICES[0], TRADE_TYPE, trade.address), RawSourceBuilder);
+        assertEquals(source.toUtf8(), GSON.toJson(trade));
+    }
+}
@@ -0,0 +1,69 @@
+package io.polyglotted.eswrapper.services;
+
+import io.polyglotted.eswrapper.AbstractElasticTest;
+import io.polyglotted.eswrapper.indexing.Bundling;
+import org.testng.annotations.Test;
+
+import static io.polyglotted.eswrapper.indexing.Bundling.bundlingBuilder;
+import static io.polyglotted.eswrapper.indexing.IndexRecord.createRecord;
+import static io.polyglotted.eswrapper.indexing.IndexSerializer.GSON;
+import static io.polyglotted.eswrapper.indexing.IndexSetting.settingBuilder;
+import static io.polyglotted.eswrapper.query.ResultBuilder.NullBuilder;
+import static io.polyglotted.eswrapper.services.RefreshPolicy.coalesced;
+import static io.polyglotted.eswrapper.services.RefreshPolicy.immediate;
+import static io.polyglotted.eswrapper.services.RefreshPolicy.none;
+import static io.polyglotted.eswrapper.services.RefreshPolicy.waitUntilVisible;
+import static io.polyglotted.eswrapper.services.Trade.TRADE_TYPE;
+import static io.polyglotted.eswrapper.services.Trade.sampleTrades;
+import static io.polyglotted.pgmodel.search.IndexKey.keyWith;
+import static io.polyglotted.pgmodel.search.query.StandardQuery.queryBuilder;
+import static org.testng.Assert.assertEquals;
+
+public class RefreshPolicyTest extends AbstractElasticTest {
+    private static final String REFRESH_INDEX = "refresh_index";
+
+    @Override
+    protected void performSetup() {
+        admin.dropIndex(REFRESH_INDEX);
+        admin.createIndex(settingBuilder(3, 0).refreshInterval(-1).build(), REFRESH_INDEX);
+    }
+
+    @Test
+    public void immediateRefresh() {
+        indexer.withRefreshPolicy(immediate()).bulkIndex(tradesBundling());
+        assertEquals(visibleHits(), 20L);
+    }
+
+    @Test
+    public void noRefresh() {
+        indexer.withRefreshPolicy(none()).bulkIndex(tradesBundling());
+        assertEquals(visibleHits(), 0L);
+        admin.forceRefresh(REFRESH_INDEX);
+        assertEquals(visibleHits(), 20L);
+    }
+
+    @Test
+    public void coalescedRefresh() throws Exception {
+        IndexerWrapper coalescing = indexer.withRefreshPolicy(coalesced(100));
+        coalescing.bulkIndex(tradesBundling());
+        Thread.sleep(1000);
+        assertEquals(visibleHits(), 20L);
+    }
+
+    @Test
+    public void waitUntilVisibleFallsBackToRefresh() {
+        indexer.withRefreshPolicy(waitUntilVisible(200)).bulkIndex(tradesBundling());
+        assertEquals(visibleHits(), 20L);
+    }
+
+    private long visibleHits() {
+        return query.search(queryBuilder().index(REFRESH_INDEX).size(50).build(), null, NullBuilder).header.totalHits;
+    }
+
+    private static Bundling tradesBundling() {
+        Bundling.Builder builder = bundlingBuilder().timestamp(1425494500000L).user("tester");
+        for (Trade trade : sampleTrades())
+            builder.record(createRecord(keyWith(REFRESH_INDEX, TRADE_TYPE, trade.address), GSON.toJson(trade)));
+        return builder.build();
+    }
+}
@@ -0,0 +1,105 @@
+package io.polyglotted.eswrapper.services;
+
+import com.google.common.collect.ImmutableSet;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import static io.polyglotted.eswrapper.services.RetryPolicy.exponentialBackoff;
+import static io.polyglotted.eswrapper.services.RetryPolicy.noRetry;
+import static java.util.Arrays.asList;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void retriesOnlyRejectedItems() {
+        List<Integer> batchSizes = new ArrayList<>();
+        BulkResponse response = exponentialBackoff(3, 1, 5, 1000).execute(request(5),
+           rejecting(batchSizes, ImmutableSet.of("1", "3")));
+
+        assertEquals(batchSizes, asList(5, 2));
+        assertFalse(response.hasFailures());
+        BulkItemResponse[] items = response.getItems();
+        for (int i = 0; i < items.length; i++) {
+            assertEquals(items[i].getId(), String.valueOf(i));
+            assertEquals(items[i].getItemId(), i);
+        }
+    }
+
+    @Test
+    public void stopsWhenBudgetExhausted() {
+        List<Integer> batchSizes = new ArrayList<>();
+        BulkResponse response = exponentialBackoff(3, 10, 10, 0).execute(request(3),
+           alwaysRejecting(batchSizes, "2"));
+
+        assertEquals(batchSizes, asList(3));
+        assertTrue(response.getItems()[2].isFailed());
+    }
+
+    @Test
+    public void stopsAfterMaxRetries() {
+        List<Integer> batchSizes = new ArrayList<>();
+        BulkResponse response = exponentialBackoff(2, 1, 1, 1000).execute(request(3),
+           alwaysRejecting(batchSizes, "0"));
+
+        assertEquals(batchSizes, asList(3, 1, 1));
+        assertTrue(response.getItems()[0].isFailed());
+        assertFalse(response.getItems()[1].isFailed());
+    }
+
+    @Test
+    public void noRetryPassesThrough() {
+        List<Integer> batchSizes = new ArrayList<>();
+        BulkResponse response = noRetry().execute(request(2), rejecting(batchSizes, ImmutableSet.of("0")));
+        assertEquals(batchSizes, asList(2));
+        assertTrue(response.getItems()[0].isFailed());
+    }
+
+    @Test
+    public void delayIsJitteredAndCapped() {
+        RetryPolicy policy = exponentialBackoff(10, 100, 1000, 10000);
+        for (int attempt = 0; attempt < 10; attempt++) {
+            long ceiling = Math.min(1000, 100L << attempt);
+            long delay = policy.delayFor(attempt);
+            assertTrue(delay >= ceiling / 2 && delay <= ceiling, attempt + ":" + delay);
+        }
+    }
+
+    private static BulkRequest request(int size) {
+        BulkRequest request = new BulkRequest();
+        for (int i = 0; i < size; i++) request.add(new IndexRequest("retry", "doc", String.valueOf(i)).source("{}"));
+        return request;
+    }
+
+    private static Function<BulkRequest, BulkResponse> rejecting(List<Integer> batchSizes, Set<String> rejectOnce) {
+        return request -> respond(request, batchSizes, batchSizes.isEmpty() ? rejectOnce : ImmutableSet.<String>of());
+    }
+
+    private static Function<BulkRequest, BulkResponse> alwaysRejecting(List<Integer> batchSizes, String rejected) {
+        return request -> respond(request, batchSizes, ImmutableSet.of(rejected));
+    }
+
+    private static BulkResponse respond(BulkRequest request, List<Integer> batchSizes, Set<String> rejected) {
+        batchSizes.add(request.numberOfActions());
+        BulkItemResponse[] items = new BulkItemResponse[request.numberOfActions()];
+        for (int i = 0; i < items.length; i++) {
+            String id = ((IndexRequest) request.requests().get(i)).id();
+            items[i] = rejected.contains(id) ? new BulkItemResponse(i, "index", new BulkItemResponse.Failure("retry",
+               "doc", id, new EsRejectedExecutionException("queue full"))) :
+               new BulkItemResponse(i, "index", new IndexResponse("retry", "doc", id, 1, true));
+        }
+        return new BulkResponse(items, 1);
+    }
+}
@@ -1,5 +1,7 @@
 package io.polyglotted.eswrapper.services;
 
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
 import io.polyglotted.pgmodel.search.IndexKey;
 import lombok.EqualsAndHashCode;
 import lombok.RequiredArgsConstructor;
@@ -8,6 +10,7 @@ import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.index.VersionType;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -22,6 +25,7 @@ public class Trade {
     public static final String FieldRegion = "region";
     public static final String FieldDate = "tradeDate";
     public static final String FieldValue = "value";
+    private static final String[] SYNTHETIC_REGIONS = {"EMEA", "NA", "SA", "APAC"};
 
     public final String address;
     public final String region;
@@ -77,6 +81,23 @@ public class Trade {
         return bulkRequest;
     }
 
+    public static Map<String, Object> syntheticTrade(int i) {
+        Map<String, Object> source = new LinkedHashMap<>();
+        source.put(FieldAddress, String.format("trades:%06d", i));
+        source.put(FieldRegion, SYNTHETIC_REGIONS[i % SYNTHETIC_REGIONS.length]);
+        source.put("country", "UK");
+        source.put("city", "London");
+        source.put("exchange", "IEU");
+        source.put("trader", "trader-" + (i % 97));
+        source.put(FieldDate, 1420070400000L + (i % 365) * 86400000L);
+        source.put(FieldValue, 10.0 + (i % 1000) / 7.0);
+        source.put("quantity", i % 5000);
+        source.put("tags", new String[]{"otc", "cleared", "book-" + (i % 13)});
+        source.put("attributes", ImmutableMap.of("book", "book-" + (i % 13), "desk", "desk-" + (i % 7)));
+        source.put("notes", Strings.repeat("lorem ipsum dolor sit amet ", 24));
+        return source;
+    }
+
     public static Trade tradeFromMap(IndexKey key, Map<String, ?> source) {
         return GSON.fromJson(GSON.toJson(source), Trade.class);
     }